@@ -31,7 +31,24 @@ public class Omega {
 
         board = new Board();
         frame = new OmegaFrame();
-        
+        board.addListener(frame);
+    }
+
+    /**
+     * Replaces the board shown in the window
+     *
+     * @param newBoard the board to show
+     */
+    public static void setBoard(Board newBoard) {
+        if (board != null && frame != null)
+            board.removeListener(frame);
+
+        board = newBoard;
+
+        if (frame != null) {
+            board.addListener(frame);
+            frame.repaint();
+        }
     }
 
     public static void shutdown() {
@@ -0,0 +1,143 @@
+package featurecat.omega.analysis;
+
+import featurecat.omega.rules.Board;
+import featurecat.omega.rules.BoardData;
+import featurecat.omega.rules.BoardHistoryList;
+import featurecat.omega.rules.Heatmaps;
+import featurecat.omega.rules.InfluenceField;
+import featurecat.omega.rules.InfluenceModel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the heatmap of every move of a game, without the UI. The moves are split into runs starting at keyframes
+ * of the board history, so every run can rebuild its first position directly and step through the rest by
+ * applying deltas. The runs are computed in parallel on a fork join pool, each with its own running influence sums.
+ *
+ * Heatmaps computed here don't go through the board's heatmap cache, so that whole archives don't flush it.
+ */
+public class HeatmapBatch {
+    private final InfluenceModel model;
+    private final int stoneInfluence;
+    private final boolean useGradient;
+    private final ForkJoinPool pool;
+
+    /**
+     * Receives the heatmaps of a game as they are computed
+     */
+    public interface Listener {
+        /**
+         * Called from the pool's threads, in no particular order
+         *
+         * @param index   index of the position in the game's history, 0 being the position before the first move
+         * @param data    the position
+         * @param heatmap the influence of each point, from 0 (white) to 1 (black)
+         */
+        void heatmapComputed(int index, BoardData data, double[] heatmap);
+    }
+
+    /**
+     * Uses the common fork join pool
+     */
+    public HeatmapBatch(InfluenceModel model, int stoneInfluence, boolean useGradient) {
+        this(model, stoneInfluence, useGradient, ForkJoinPool.commonPool());
+    }
+
+    public HeatmapBatch(InfluenceModel model, int stoneInfluence, boolean useGradient, ForkJoinPool pool) {
+        this.model = model;
+        this.stoneInfluence = stoneInfluence;
+        this.useGradient = useGradient;
+        this.pool = pool;
+    }
+
+    /**
+     * @param filename a SGF file
+     * @return the heatmap of every position of the game, indexed like its history. null if the file couldn't be parsed
+     */
+    public double[][] generate(String filename) throws IOException {
+        Board board = new Board();
+        if (!SGFParser.load(filename, board))
+            return null;
+        return generate(board);
+    }
+
+    /**
+     * @param board a board holding a game
+     * @return the heatmap of every position of the game, indexed like its history
+     */
+    public double[][] generate(Board board) {
+        synchronized (board) {
+            double[][] result = new double[board.getHistory().size()][];
+            generate(board, (index, data, heatmap) -> result[index] = heatmap);
+            return result;
+        }
+    }
+
+    /**
+     * Computes the heatmap of every position of a game and hands each to listener as soon as it is done. Returns
+     * once all of them are done. The board can't be changed in the meantime
+     *
+     * @param board    a board holding a game
+     * @param listener receives the heatmaps
+     */
+    public void generate(Board board, Listener listener) {
+        synchronized (board) {
+            BoardHistoryList history = board.getHistory();
+            List<Integer> keyframes = new ArrayList<>();
+            for (int i = 0; i < history.size(); i++) {
+                if (history.getNode(i).isKeyframe())
+                    keyframes.add(i);
+            }
+            keyframes.add(history.size());
+
+            pool.invoke(new Runs(history, keyframes, 0, keyframes.size() - 1, listener));
+        }
+    }
+
+    /**
+     * The runs between keyframes first to last, split in half until there is one run per task
+     */
+    private class Runs extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BoardHistoryList history;
+        private final List<Integer> keyframes;
+        private final int first, last;
+        private final Listener listener;
+
+        private Runs(BoardHistoryList history, List<Integer> keyframes, int first, int last, Listener listener) {
+            this.history = history;
+            this.keyframes = keyframes;
+            this.first = first;
+            this.last = last;
+            this.listener = listener;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first > 1) {
+                int middle = (first + last) / 2;
+                invokeAll(new Runs(history, keyframes, first, middle, listener),
+                        new Runs(history, keyframes, middle, last, listener));
+                return;
+            }
+
+            InfluenceField field = new InfluenceField();
+            int from = keyframes.get(first);
+            int to = keyframes.get(last);
+            BoardData data = history.getNode(from).getData();
+            for (int i = from; i < to; i++) {
+                if (i > from)
+                    data = history.getNode(i).getData(data);
+
+                double[] heatmap = new double[Board.BOARD_SIZE * Board.BOARD_SIZE];
+                Heatmaps.compute(data.stones, model, field, stoneInfluence, useGradient, heatmap);
+                listener.heatmapComputed(i, data, heatmap);
+            }
+        }
+    }
+}
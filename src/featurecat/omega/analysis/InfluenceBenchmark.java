@@ -0,0 +1,72 @@
+package featurecat.omega.analysis;
+
+import featurecat.omega.rules.Board;
+import featurecat.omega.rules.BoardData;
+import featurecat.omega.rules.InfluenceModel;
+import featurecat.omega.rules.Stone;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times each influence model on positions from a random game, from the empty board to a full one, at a short and at
+ * the longest stone influence. Run from the command line, no window is opened.
+ */
+public class InfluenceBenchmark {
+    private static final int[] MOVE_NUMBERS = {0, 50, 100, 200, 300};
+    private static final int[] STONE_INFLUENCES = {7, 20};
+    private static final int ITERATIONS = 200;
+
+    public static void main(String[] args) {
+        List<BoardData> positions = playRandomGame(new Random(args.length > 0 ? Long.parseLong(args[0]) : 0));
+        double[] heatmap = new double[Board.BOARD_SIZE * Board.BOARD_SIZE];
+
+        System.out.printf("%-10s %6s %6s %12s%n", "model", "k", "stones", "us/heatmap");
+        for (InfluenceModel model : Board.influenceModels) {
+            for (int stoneInfluence : STONE_INFLUENCES) {
+                for (BoardData position : positions) {
+                    // warm up, then measure
+                    for (int i = 0; i < ITERATIONS; i++)
+                        model.computeInfluence(position.stones, stoneInfluence, heatmap);
+
+                    long start = System.nanoTime();
+                    for (int i = 0; i < ITERATIONS; i++)
+                        model.computeInfluence(position.stones, stoneInfluence, heatmap);
+                    long elapsed = System.nanoTime() - start;
+
+                    System.out.printf("%-10s %6d %6d %12.1f%n", model.getName(), stoneInfluence,
+                            countStones(position.stones), elapsed / 1000.0 / ITERATIONS);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the positions at each of MOVE_NUMBERS, the last one being played until the board is nearly full
+     */
+    private static List<BoardData> playRandomGame(Random random) {
+        Board board = new Board();
+        List<BoardData> positions = new ArrayList<>();
+        int size = Board.BOARD_SIZE;
+
+        for (int moveNumber : MOVE_NUMBERS) {
+            // illegal moves are ignored by the board, so keep trying until enough moves were played
+            for (int tries = 0; board.getData().moveNumber < moveNumber && tries < 100 * size * size; tries++) {
+                Stone color = board.getData().blackToPlay ? Stone.BLACK : Stone.WHITE;
+                board.place(random.nextInt(size), random.nextInt(size), color);
+            }
+            positions.add(board.getData());
+        }
+        return positions;
+    }
+
+    private static int countStones(Stone[] stones) {
+        int count = 0;
+        for (Stone stone : stones) {
+            if (stone != Stone.EMPTY)
+                count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,297 @@
+package featurecat.omega.analysis;
+
+import featurecat.omega.rules.GameTree;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The games of a SGF file holding any number of games one after another, read one game at a time. The file is
+ * mapped into memory a window at a time instead of read, so files of any size can be read with little memory: only
+ * the game being parsed is ever decoded.
+ *
+ * The games can be read in parallel: spliterators split at game boundaries. The collection must stay open while its
+ * iterators, spliterators and streams are used.
+ *
+ * Boundaries are found in the bytes, in the charset each game declares with CA: in charsets like Shift_JIS or GBK, the
+ * second byte of a character can look like "]" or "\", so it is skipped. Splits don't need to know where the games
+ * before them are: they jump to the middle of the range and look for the next place that looks like the end of a game
+ * followed by the start of another.
+ */
+public class SGFCollection implements Iterable<GameTree>, Closeable {
+    // how much of the file is mapped at a time
+    private static final int WINDOW_SIZE = 64 << 20;
+    // ranges smaller than this aren't worth splitting
+    private static final long MIN_SPLIT_SIZE = 1 << 20;
+    // for estimating the number of games left
+    private static final long AVERAGE_GAME_SIZE = 2048;
+    // how far into a game its root node is searched for CA
+    private static final int ROOT_NODE_SIZE = 64 << 10;
+    // properties only found in root nodes, one of which nearly every game has
+    private static final String[] ROOT_PROPERTIES = {"GM", "FF", "SZ", "CA", "AP", "ST"};
+
+    private final FileChannel channel;
+    private final long size;
+
+    /**
+     * @param path a SGF file
+     */
+    public SGFCollection(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+
+    /**
+     * @return the games, in the order they are in the file
+     */
+    @Override
+    public Iterator<GameTree> iterator() {
+        return Spliterators.iterator(spliterator());
+    }
+
+    @Override
+    public Spliterator<GameTree> spliterator() {
+        return new Games(0, size);
+    }
+
+    /**
+     * @param parallel whether or not to parse games in parallel
+     * @return the games
+     */
+    public Stream<GameTree> stream(boolean parallel) {
+        return StreamSupport.stream(spliterator(), parallel);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * The games starting in a range of the file. Finds where games start and end without decoding anything, then
+     * parses one game at a time
+     */
+    private class Games implements Spliterator<GameTree> {
+        private long position;
+        private final long end;
+
+        // the part of the file mapped at the moment
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        // where the game last found starts and ends, and its charset
+        private long gameStart, gameEnd;
+        private Charset gameCharset;
+
+        /**
+         * @param position where to start looking for games. Must not be inside a game
+         * @param end      games starting at this offset or later belong to another spliterator
+         */
+        Games(long position, long end) {
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super GameTree> action) {
+            while (findGame(position)) {
+                position = gameEnd;
+                SGFTokenizer tokenizer = new SGFTokenizer(slice(gameStart, gameEnd), gameCharset);
+                if (tokenizer.findGameTree()) {
+                    action.accept(SGFParser.parse(tokenizer));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<GameTree> trySplit() {
+            long middle = position + (end - position) / 2;
+            if (end - position < MIN_SPLIT_SIZE)
+                return null;
+
+            // split at the first game starting after the middle
+            long split = findSplit(middle);
+            if (split <= position || split >= end)
+                return null;
+
+            Games prefix = new Games(position, split);
+            position = split;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (end - position) / AVERAGE_GAME_SIZE + 1;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+
+        /**
+         * Finds the next game starting at or after from and before end, and sets gameStart, gameEnd and gameCharset
+         * to it
+         *
+         * @return whether or not there is such a game
+         */
+        private boolean findGame(long from) {
+            for (long i = from; i < end; i++) {
+                if (isGameStart(i)) {
+                    gameStart = i;
+                    gameCharset = findCharset(i);
+                    gameEnd = skipGame(i, SGFTokenizer.getLeadBytes(gameCharset));
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Looks for a game starting right after another one ends, that is a ")" followed by "(;", at or after from.
+         * Variations look the same, and so can the text of a comment, so each one found is checked: the first node
+         * must have a property only found in root nodes, with a value without escapes, which a game quoted in a
+         * comment can't have as its "]" are escaped. The game must also be followed by another game or the end of the
+         * file
+         *
+         * @return where the game starts, or end if there is none before end
+         */
+        private long findSplit(long from) {
+            for (long i = from; i < end; i++) {
+                if (get(i) != ')' || i > 0 && get(i - 1) == '\\')
+                    continue;
+
+                long start = skipWhitespace(i + 1);
+                if (start >= end || !isGameStart(start) || !hasRootProperty(start))
+                    continue;
+
+                long next = skipWhitespace(skipGame(start, SGFTokenizer.getLeadBytes(findCharset(start))));
+                if (next == size || isGameStart(next))
+                    return start;
+            }
+            return end;
+        }
+
+        /**
+         * @param start where a game starts
+         * @return whether or not the first node of the game has a root property, with a value without escapes
+         */
+        private boolean hasRootProperty(long start) {
+            ByteBuffer root = slice(start, Math.min(size, start + ROOT_NODE_SIZE));
+            int value = SGFTokenizer.findRootProperty(root, 0, root.limit(), ROOT_PROPERTIES);
+            if (value < 0)
+                return false;
+            for (int i = value; i < root.limit(); i++) {
+                byte b = root.get(i);
+                if (b == ']')
+                    return true;
+                if (b == '\\')
+                    return false;
+            }
+            return false;
+        }
+
+        private long skipWhitespace(long i) {
+            while (i < size && isWhitespace(get(i)))
+                i++;
+            return i;
+        }
+
+        /**
+         * @return whether or not a game starts at an offset, that is a "(" followed by ";"
+         */
+        private boolean isGameStart(long offset) {
+            if (get(offset) != '(')
+                return false;
+            for (long i = offset + 1; i < size; i++) {
+                byte b = get(i);
+                if (b == ';')
+                    return true;
+                if (!isWhitespace(b))
+                    return false;
+            }
+            return false;
+        }
+
+        /**
+         * @return the charset the game starting at an offset declares
+         */
+        private Charset findCharset(long start) {
+            ByteBuffer root = slice(start, Math.min(size, start + ROOT_NODE_SIZE));
+            return SGFTokenizer.findCharset(root, 0, root.limit());
+        }
+
+        /**
+         * @param start where a game starts
+         * @param lead  the lead bytes of the game's charset, or null if it is ASCII safe
+         * @return the offset after the ")" closing the game, or the end of the file if the game isn't closed
+         */
+        private long skipGame(long start, boolean[] lead) {
+            int depth = 0;
+            boolean inValue = false;
+            for (long i = start; i < size; i++) {
+                byte b = get(i);
+                if (b < 0 && lead != null && lead[b & 0xFF]) {
+                    // the next byte belongs to the same character, whatever it looks like
+                    i++;
+                } else if (inValue) {
+                    if (b == '\\')
+                        i++;
+                    else if (b == ']')
+                        inValue = false;
+                } else if (b == '[') {
+                    inValue = true;
+                } else if (b == '(') {
+                    depth++;
+                } else if (b == ')' && --depth == 0) {
+                    return i + 1;
+                }
+            }
+            return size;
+        }
+
+        private byte get(long offset) {
+            if (window == null || offset < windowStart || offset >= windowStart + window.limit())
+                map(offset, WINDOW_SIZE);
+            return window.get((int) (offset - windowStart));
+        }
+
+        /**
+         * @return the bytes from start to end, without copying them
+         */
+        private ByteBuffer slice(long start, long end) {
+            int length = (int) (end - start);
+            if (window == null || start < windowStart || end > windowStart + window.limit())
+                map(start, Math.max(length, WINDOW_SIZE));
+            return window.slice((int) (start - windowStart), length);
+        }
+
+        private void map(long start, long length) {
+            try {
+                windowStart = start;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(length, size - start));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
@@ -0,0 +1,347 @@
+package featurecat.omega.analysis;
+
+import featurecat.omega.rules.GameTree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Reads and parses many SGF files at once, eg a whole archive of games. Files are read on a pool of reader threads,
+ * which mostly wait on the disk, and parsed on a pool of one thread per core. Every game found is handed to a
+ * listener, along with the files that fail and the progress so far.
+ */
+public class SGFImporter {
+    // reading mostly waits on the disk, so there are more readers than cores. (Virtual threads would suit them
+    // better, but need a newer JDK than the one the app is built for)
+    public static int readerThreads = 16;
+    public static int parserThreads = Runtime.getRuntime().availableProcessors();
+
+    // files at least this large are read as collections of games, which are parsed in parallel
+    private static final long COLLECTION_SIZE = 1 << 20;
+    // files read but not parsed yet, per thread. Keeps memory bounded when the disk is faster than the parsers
+    private static final int PENDING_FILES_PER_THREAD = 4;
+    // how often progress is reported, in nanoseconds
+    private static final long PROGRESS_INTERVAL = 250_000_000;
+
+    /**
+     * Gets the results of an import. Called from the importer's threads, several at a time, so it must be thread
+     * safe
+     */
+    public interface Listener {
+        /**
+         * Called for each game parsed. The games of a small file are handed out in order, one at a time. The games
+         * of a large collection are handed out as they are parsed, several at a time
+         */
+        void gameImported(Path file, GameTree game);
+
+        /**
+         * Called for each file or directory that couldn't be read, and each file that couldn't be parsed. Anything a
+         * file throws, even an error like running out of memory on a huge file, only fails that file: the import goes
+         * on with the others
+         *
+         * @param file the file, or null if it isn't known
+         */
+        default void fileFailed(Path file, Throwable e) {
+        }
+
+        /**
+         * Called now and then while importing, and once at the end
+         */
+        default void progressed(Progress progress) {
+        }
+    }
+
+    /**
+     * How far an import has got
+     */
+    public static class Progress {
+        // files found so far, files done, including the failed ones, and files failed
+        public final int filesFound, filesDone, filesFailed;
+        public final long games, bytes;
+        public final long elapsedNanos;
+
+        Progress(int filesFound, int filesDone, int filesFailed, long games, long bytes, long elapsedNanos) {
+            this.filesFound = filesFound;
+            this.filesDone = filesDone;
+            this.filesFailed = filesFailed;
+            this.games = games;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double getFilesPerSecond() {
+            return elapsedNanos == 0 ? 0 : filesDone * 1e9 / elapsedNanos;
+        }
+
+        public double getMegabytesPerSecond() {
+            return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos / (1 << 20);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d files, %d failed, %d games, %.0f files/s, %.1f MB/s", filesDone, filesFound,
+                    filesFailed, games, getFilesPerSecond(), getMegabytesPerSecond());
+        }
+    }
+
+    private final Listener listener;
+    private volatile boolean cancelled;
+
+    private final AtomicInteger filesFound = new AtomicInteger();
+    private final AtomicInteger filesDone = new AtomicInteger();
+    private final AtomicInteger filesFailed = new AtomicInteger();
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong();
+    private long startTime;
+
+    // the threads of the import in progress, and permits for the files read but not parsed yet
+    private ExecutorService readers;
+    private ForkJoinPool parsers;
+    private Semaphore pending;
+    private int maxPending;
+
+    public SGFImporter(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return whether or not a path is a SGF file
+     */
+    public static boolean isSgfFile(Path path) {
+        return path.getFileName() != null && path.getFileName().toString().toLowerCase().endsWith(".sgf") &&
+                Files.isRegularFile(path);
+    }
+
+    /**
+     * Imports every SGF file in a directory and its subdirectories. Returns once they are all done. Subdirectories that
+     * can't be read are handed to the listener like files, and the rest of the tree is still imported
+     *
+     * @return the final progress
+     */
+    public Progress importDirectory(Path directory) throws IOException {
+        start();
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (isSgfFile(file))
+                        submit(file);
+                    return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    walkFailed(file, e);
+                    return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) {
+                    if (e != null)
+                        walkFailed(directory, e);
+                    return cancelled ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+            });
+        } finally {
+            finish();
+        }
+        return reportEnd();
+    }
+
+    /**
+     * Imports SGF files. Returns once they are all done
+     *
+     * @param files read lazily, so that the first files are imported while the others are still being found. If the
+     *              stream fails, eg a directory walk that can't read a directory, the failure is handed to the
+     *              listener and the files found until then are still imported
+     * @return the final progress
+     */
+    public Progress importFiles(Stream<Path> files) {
+        start();
+        try {
+            Iterator<Path> iterator = files.iterator();
+            while (!cancelled) {
+                Path file;
+                try {
+                    if (!iterator.hasNext())
+                        break;
+                    file = iterator.next();
+                } catch (UncheckedIOException e) {
+                    // a stream can't go on after it fails
+                    walkFailed(getFile(e.getCause()), e.getCause());
+                    break;
+                }
+                submit(file);
+            }
+        } finally {
+            finish();
+        }
+        return reportEnd();
+    }
+
+    /**
+     * Stops an import after the files being parsed. Thread safe
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Thread safe
+     */
+    public Progress getProgress() {
+        return new Progress(filesFound.get(), filesDone.get(), filesFailed.get(), games.get(), bytes.get(),
+                System.nanoTime() - startTime);
+    }
+
+    private void start() {
+        startTime = System.nanoTime();
+        lastReport.set(startTime);
+
+        readers = Executors.newFixedThreadPool(readerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "SGF reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // parallel streams started from its threads, eg over a collection, run on it too
+        parsers = new ForkJoinPool(parserThreads);
+
+        maxPending = PENDING_FILES_PER_THREAD * (readerThreads + parserThreads);
+        pending = new Semaphore(maxPending);
+    }
+
+    /**
+     * Waits for the files still being imported, then stops the threads
+     */
+    private void finish() {
+        pending.acquireUninterruptibly(maxPending);
+        readers.shutdown();
+        parsers.shutdown();
+    }
+
+    private Progress reportEnd() {
+        Progress progress = getProgress();
+        listener.progressed(progress);
+        return progress;
+    }
+
+    private void submit(Path file) {
+        pending.acquireUninterruptibly();
+        filesFound.incrementAndGet();
+        readers.execute(() -> read(file));
+    }
+
+    private void read(Path file) {
+        boolean handedOver = false;
+        Throwable failure = null;
+        try {
+            if (!cancelled) {
+                long size = Files.size(file);
+                if (size >= COLLECTION_SIZE) {
+                    // mapped a window at a time while it is parsed, so there is nothing to read first
+                    parsers.execute(() -> parseCollection(file, size));
+                } else {
+                    ByteBuffer buffer = SGFParser.read(file);
+                    parsers.execute(() -> parse(file, buffer));
+                }
+                handedOver = true;
+            }
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            // once a parser has the file, it finishes it
+            if (!handedOver)
+                done(file, 0, failure);
+        }
+    }
+
+    private void parse(Path file, ByteBuffer buffer) {
+        long size = buffer.remaining();
+        Throwable failure = null;
+        try {
+            SGFTokenizer tokenizer = new SGFTokenizer(buffer);
+            while (!cancelled && tokenizer.findGameTree())
+                imported(file, SGFParser.parse(tokenizer));
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            done(file, failure == null ? size : 0, failure);
+        }
+    }
+
+    private void parseCollection(Path file, long size) {
+        Throwable failure = null;
+        try (SGFCollection collection = new SGFCollection(file)) {
+            collection.stream(true).forEach(game -> {
+                if (!cancelled)
+                    imported(file, game);
+            });
+        } catch (Throwable e) {
+            failure = e;
+        } finally {
+            done(file, failure == null ? size : 0, failure);
+        }
+    }
+
+    private void imported(Path file, GameTree game) {
+        listener.gameImported(file, game);
+        games.incrementAndGet();
+    }
+
+    /**
+     * Counts a file as done, and gives its permit back
+     *
+     * @param e why the file failed, or null if it didn't
+     */
+    private void done(Path file, long size, Throwable e) {
+        try {
+            bytes.addAndGet(size);
+            count(file, e);
+        } finally {
+            pending.release();
+        }
+    }
+
+    /**
+     * Counts a failure to find files, eg a directory that can't be read, as a failed file
+     */
+    private void walkFailed(Path file, Throwable e) {
+        filesFound.incrementAndGet();
+        count(file, e);
+    }
+
+    private void count(Path file, Throwable e) {
+        if (e != null) {
+            filesFailed.incrementAndGet();
+            listener.fileFailed(file, e);
+        }
+        filesDone.incrementAndGet();
+
+        long now = System.nanoTime();
+        long last = lastReport.get();
+        if (now - last >= PROGRESS_INTERVAL && lastReport.compareAndSet(last, now))
+            listener.progressed(getProgress());
+    }
+
+    private static Path getFile(IOException e) {
+        String file = e instanceof FileSystemException ? ((FileSystemException) e).getFile() : null;
+        return file == null ? null : Paths.get(file);
+    }
+}
@@ -4,11 +4,15 @@ import featurecat.omega.Omega;
 import featurecat.omega.rules.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static java.util.Arrays.asList;
 
@@ -19,33 +23,60 @@ public class SGFParser {
             new String[] {"LB", "CR", "SQ", "MA", "TR", "AB", "AW", "AE"};
     private static final String[] markupProps = new String[] {"LB", "CR", "SQ", "MA", "TR"};
 
-    public static boolean load(String filename, Board... possibleBoard) throws IOException {
-        // Clear the board
-        Board board = possibleBoard.length > 0 ? possibleBoard[0] : Omega.board;
-        while (board.previousMove()) ;
+    // files at least this large are mapped into memory instead of read
+    private static final int MAP_THRESHOLD = 1 << 20;
 
+    public static boolean load(String filename) throws IOException {
+        return load(filename, Omega.board);
+    }
+
+    /**
+     * Loads a SGF file into a board. Does not need the UI, so any board can be used, eg from a worker thread
+     *
+     * @param filename the file to load
+     * @param board    the board to play the game on
+     * @return whether or not the file could be parsed
+     */
+    public static boolean load(String filename, Board board) throws IOException {
         File file = new File(filename);
         if (!file.exists() || !file.canRead()) {
             return false;
         }
 
-        FileInputStream fp = new FileInputStream(file);
-        InputStreamReader reader = new InputStreamReader(fp);
-        StringBuilder builder = new StringBuilder();
-        while (reader.ready()) {
-            builder.append((char) reader.read());
-        }
-        reader.close();
-        fp.close();
-        String value = builder.toString();
-        if (value.isEmpty()) {
+        ByteBuffer buffer = read(file.toPath());
+        if (!buffer.hasRemaining()) {
             return false;
         }
 
-        boolean returnValue = parse(value);
+        boolean returnValue = parse(buffer, board);
         return returnValue;
     }
 
+    /**
+     * Reads a whole file in one go. Large files are mapped into memory instead of copied
+     *
+     * @param path the file to read
+     * @return the bytes of the file, from the buffer's position to its limit
+     */
+    public static ByteBuffer read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large: " + path);
+            }
+            if (size >= MAP_THRESHOLD) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // keep reading
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
     public static int[] convertSgfPosToCoord(String pos) {
         if (pos.equals("tt") || pos.isEmpty()) return null;
         int[] ret = new int[2];
@@ -54,256 +85,107 @@ public class SGFParser {
         return ret;
     }
 
-    private static boolean parse(String value) {
-        // Drop anything outside "(;...)"
-        final Pattern SGF_PATTERN = Pattern.compile("(?s).*?(\\(\\s*;.*\\)).*?");
-        Matcher sgfMatcher = SGF_PATTERN.matcher(value);
-        if (sgfMatcher.matches()) {
-            value = sgfMatcher.group(1);
-        } else {
+    private static boolean parse(ByteBuffer buffer, Board board) {
+        // Drop anything before "(;"
+        SGFTokenizer tokenizer = new SGFTokenizer(buffer);
+        if (!tokenizer.findGameTree()) {
             return false;
         }
 
-        // dont want to have to support sz property. wouldnt be that hard to, though
-//        // Determine the SZ property
-//        Pattern szPattern = Pattern.compile("(?s).*?SZ\\[(\\d+)\\](?s).*");
-//        Matcher szMatcher = szPattern.matcher(value);
-//        if (szMatcher.matches()) {
-//            Lizzie.board.reopen(Integer.parseInt(szMatcher.group(1)));
-//        } else {
-//            Lizzie.board.reopen(19);
-//        }
+        board.load(parse(tokenizer));
+        return true;
+    }
 
-        int subTreeDepth = 0;
-        // Save the variation step count
-        Map<Integer, Integer> subTreeStepMap = new HashMap<Integer, Integer>();
-        // Comment of the game head
-        String headComment = "";
-        // Game properties
-        Map<String, String> gameProperties = new HashMap<String, String>();
-        Map<String, String> pendingProps = new HashMap<String, String>();
-        boolean inTag = false,
-                isMultiGo = false,
-                escaping = false,
-                moveStart = false,
-                addPassForMove = true;
-        boolean inProp = false;
-        String tag = "";
-        StringBuilder tagBuilder = new StringBuilder();
-        StringBuilder tagContentBuilder = new StringBuilder();
+    /**
+     * Reads a game into a game tree, without playing it. The tokenizer must be at the start of a game, eg after
+     * findGameTree, and is left after its end
+     *
+     * @param tokenizer the game's tokens
+     * @return the game read
+     */
+    public static GameTree parse(SGFTokenizer tokenizer) {
+        GameTree game = new GameTree();
+        // the node each variation started from, to go back to at its end
+        int[] variationStarts = new int[16];
+        int depth = 0;
+        int node = GameTree.NONE;
         // MultiGo 's branch: (Main Branch (Main Branch) (Branch) )
         // Other 's branch: (Main Branch (Branch) Main Branch)
-        if (value.matches("(?s).*\\)\\s*\\)")) {
-            isMultiGo = true;
-        }
-
-        String blackPlayer = "", whitePlayer = "";
-
-        // Support unicode characters (UTF-8)
-        for (int i = 0; i < value.length(); i++) {
-            char c = value.charAt(i);
-            if (escaping) {
-                // Any char following "\" is inserted verbatim
-                // (ref) "3.2. Text" in https://www.red-bean.com/sgf/sgf4.html
-                tagContentBuilder.append(c);
-                escaping = false;
-                continue;
-            }
-            switch (c) {
-                case '(':
-                    if (!inTag) {
-                        subTreeDepth += 1;
-                        // Initialize the step count
-                        subTreeStepMap.put(subTreeDepth, 0);
-                        addPassForMove = true;
-                        pendingProps = new HashMap<String, String>();
-                    } else {
-                        if (i > 0) {
-                            // Allow the comment tag includes '('
-                            tagContentBuilder.append(c);
-                        }
+        boolean afterVariation = false;
+        String tag = "";
+        Map<String, String> properties = null;
+
+        SGFTokenizer.Token token;
+        loop:
+        while ((token = tokenizer.next()) != SGFTokenizer.Token.END) {
+            switch (token) {
+                case GAME_TREE_START:
+                    if (depth == variationStarts.length) {
+                        variationStarts = Arrays.copyOf(variationStarts, 2 * depth);
                     }
+                    variationStarts[depth++] = node;
+                    afterVariation = false;
                     break;
-                case ')':
-                    if (!inTag) {
-                        if (isMultiGo) {
-                            // Restore to the variation node
-                            int varStep = subTreeStepMap.get(subTreeDepth);
-                            for (int s = 0; s < varStep; s++) {
-                                Omega.board.previousMove();
-                            }
-                        }
-                        subTreeDepth -= 1;
-                    } else {
-                        // Allow the comment tag includes '('
-                        tagContentBuilder.append(c);
+                case GAME_TREE_END:
+                    node = variationStarts[--depth];
+                    afterVariation = true;
+                    if (depth == 0) {
+                        // Drop anything after the game
+                        break loop;
                     }
                     break;
-                case '[':
-                    if (!inProp) {
-                        inProp = true;
-                        if (subTreeDepth > 1 && !isMultiGo) {
-                            break;
-                        }
-                        inTag = true;
-                        String tagTemp = tagBuilder.toString();
-                        if (!tagTemp.isEmpty()) {
-                            // Ignore small letters in tags for the long format Smart-Go file.
-                            // (ex) "PlayerBlack" ==> "PB"
-                            // It is the default format of mgt, an old SGF tool.
-                            // (Mgt is still supported in Debian and Ubuntu.)
-                            tag = tagTemp.replaceAll("[a-z]", "");
-                        }
-                        tagContentBuilder = new StringBuilder();
+                case NODE:
+                    if (node == GameTree.NONE) {
+                        node = GameTree.ROOT;
+                    } else if (afterVariation) {
+                        // the main branch goes on after the other branches
+                        node = game.addFirstNode(node);
                     } else {
-                        tagContentBuilder.append(c);
+                        node = game.addNode(node);
                     }
+                    afterVariation = false;
+                    properties = null;
                     break;
-                case ']':
-                    if (subTreeDepth > 1 && !isMultiGo) {
+                case IDENTIFIER:
+                    tag = tokenizer.getIdentifier();
+                    break;
+                case VALUE:
+                    if (node == GameTree.NONE || node != game.size() - 1) {
+                        // Not inside a node
                         break;
                     }
-                    inTag = false;
-                    inProp = false;
-                    tagBuilder = new StringBuilder();
-                    String tagContent = tagContentBuilder.toString();
-                    // We got tag, we can parse this tag now.
+                    // Only text values are decoded
                     if (tag.equals("B") || tag.equals("W")) {
-                        moveStart = true;
-                        addPassForMove = true;
-                        int[] move = convertSgfPosToCoord(tagContent);
-                        // Save the step count
-                        subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
-                        Stone color = tag.equals("B") ? Stone.BLACK : Stone.WHITE;
-                        boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
-                        if (move == null) {
-                            Omega.board.pass(color);
-                        } else {
-                            Omega.board.place(move[0], move[1], color);
-                        }
-                        if (newBranch) {
-                            processPendingPros(pendingProps);
-                        }
-                    } else if (tag.equals("C")) {
-                        // Support comment
-                        if (!moveStart) {
-                            headComment = tagContent;
-                        } else {
-//                            Lizzie.board.comment(tagContent);
-                        }
+                        game.addMove(node, tag.equals("B") ? Stone.BLACK : Stone.WHITE, getPoint(tokenizer));
                     } else if (tag.equals("AB") || tag.equals("AW")) {
-                        int[] move = convertSgfPosToCoord(tagContent);
-                        Stone color = tag.equals("AB") ? Stone.BLACK : Stone.WHITE;
-                        if (moveStart) {
-                            // add to node properties
-//                            Lizzie.board.addNodeProperty(tag, tagContent);
-                            if (addPassForMove) {
-                                // Save the step count
-                                subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
-                                boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
-                                Omega.board.pass(color);
-                                if (newBranch) {
-                                    processPendingPros(pendingProps);
-                                }
-                                addPassForMove = false;
-                            }
-//                            Lizzie.board.addNodeProperty(tag, tagContent);
-                            if (move != null) {
-                                Omega.board.place(move[0], move[1], color);
-                            }
-                        } else {
-                            if (move == null) {
-                                Omega.board.pass(color);
-                            } else {
-                                Omega.board.place(move[0], move[1], color);
-                            }
-//                            Omega.board.flatten();
-                        }
-                    } else if (tag.equals("PB")) {
-                        blackPlayer = tagContent;
-                    } else if (tag.equals("PW")) {
-                        whitePlayer = tagContent;
-                    } else if (tag.equals("KM")) {
-                        try {
-                            if (tagContent.trim().isEmpty()) {
-                                tagContent = "0.0";
-                            }
-//                            Omega.board.getHistory().getGameInfo().setKomi(Double.parseDouble(tagContent));
-                        } catch (NumberFormatException e) {
-                            e.printStackTrace();
-                        }
+                        game.addSetup(node, tag.equals("AB") ? Stone.BLACK : Stone.WHITE, getPoint(tokenizer));
+                    } else if (tag.equals("AE")) {
+                        game.addClear(node, getPoint(tokenizer));
                     } else {
-                        if (moveStart) {
-                            // Other SGF node properties
-                            if ("AE".equals(tag)) {
-                                // remove a stone
-                                if (addPassForMove) {
-                                    // Save the step count
-                                    subTreeStepMap.put(subTreeDepth, subTreeStepMap.get(subTreeDepth) + 1);
-                                    Stone color =
-                                            Omega.board.getHistory().getLastMoveColor() == Stone.WHITE
-                                                    ? Stone.BLACK
-                                                    : Stone.WHITE;
-                                    boolean newBranch = (subTreeStepMap.get(subTreeDepth) == 1);
-                                    Omega.board.pass(color);
-                                    if (newBranch) {
-                                        processPendingPros(pendingProps);
-                                    }
-                                    addPassForMove = false;
-                                }
-//                                Lizzie.board.addNodeProperty(tag, tagContent);
-                                int[] move = convertSgfPosToCoord(tagContent);
-                                if (move != null) {
-//                                    Lizzie.board.removeStone(
-//                                            move[0], move[1], tag.equals("AB") ? Stone.BLACK : Stone.WHITE);
-                                }
-                            } else {
-                                boolean firstProp = (subTreeStepMap.get(subTreeDepth) == 0);
-                                if (firstProp) {
-                                    addProperty(pendingProps, tag, tagContent);
-                                } else {
-//                                    Lizzie.board.addNodeProperty(tag, tagContent);
-                                }
-                            }
-                        } else {
-                            addProperty(gameProperties, tag, tagContent);
+                        if (properties == null) {
+                            properties = new HashMap<String, String>();
+                            game.setProperties(node, properties);
                         }
+                        addProperty(properties, tag, tokenizer.getValue());
                     }
                     break;
-                case ';':
-                    break;
                 default:
-                    if (subTreeDepth > 1 && !isMultiGo) {
-                        break;
-                    }
-                    if (inTag) {
-                        if (c == '\\') {
-                            escaping = true;
-                            continue;
-                        }
-                        tagContentBuilder.append(c);
-                    } else {
-                        if (c != '\n' && c != '\r' && c != '\t' && c != ' ') {
-                            tagBuilder.append(c);
-                        }
-                    }
+                    break;
             }
         }
 
-//        Lizzie.frame.setPlayers(whitePlayer, blackPlayer);
-
-        // Rewind to game start
-        while (Omega.board.previousMove()) ;
-
-        // Set AW/AB Comment
-//        if (!headComment.isEmpty()) {
-//            Lizzie.board.comment(headComment);
-//        }
-//        if (gameProperties.size() > 0) {
-//            Lizzie.board.addNodeProperties(gameProperties);
-//        }
+        return game;
+    }
 
-        return true;
+    /**
+     * @return the array index of the point just read, GameTree.PASS, or GameTree.OFF_BOARD
+     */
+    private static int getPoint(SGFTokenizer tokenizer) {
+        int[] point = tokenizer.getPoint();
+        if (point == null) {
+            return GameTree.PASS;
+        }
+        return Board.isValid(point[0], point[1]) ? Board.getIndex(point[0], point[1]) : GameTree.OFF_BOARD;
     }
 
     public static String saveToString() throws IOException {
@@ -398,17 +280,18 @@ public class SGFParser {
 
         if (node != null) {
 
-            BoardData data = node.getData();
+            Stone lastMoveColor = node.getLastMoveColor();
+            int[] lastMove = node.getLastMove();
             String stone = "";
-            if (Stone.BLACK.equals(data.lastMoveColor) || Stone.WHITE.equals(data.lastMoveColor)) {
+            if (Stone.BLACK.equals(lastMoveColor) || Stone.WHITE.equals(lastMoveColor)) {
 
-                if (Stone.BLACK.equals(data.lastMoveColor)) stone = "B";
-                else if (Stone.WHITE.equals(data.lastMoveColor)) stone = "W";
+                if (Stone.BLACK.equals(lastMoveColor)) stone = "B";
+                else if (Stone.WHITE.equals(lastMoveColor)) stone = "W";
 
                 builder.append(";");
                 if (true) {
-                    char x = data.lastMove != null ? (char) (data.lastMove[0] + 'a') : 't';
-                    char y = data.lastMove != null ? (char) (data.lastMove[1] + 'a') : 't';
+                    char x = lastMove != null ? (char) (lastMove[0] + 'a') : 't';
+                    char y = lastMove != null ? (char) (lastMove[1] + 'a') : 't';
                     builder.append(String.format("%s[%c%c]", stone, x, y));
                 }
 
@@ -492,58 +375,14 @@ public class SGFParser {
      * @return
      */
     public static void addProperties(Map<String, String> props, String propsStr) {
-        boolean inTag = false, escaping = false;
+        SGFTokenizer tokenizer = new SGFTokenizer(ByteBuffer.wrap(propsStr.getBytes(StandardCharsets.UTF_8)));
         String tag = "";
-        StringBuilder tagBuilder = new StringBuilder();
-        StringBuilder tagContentBuilder = new StringBuilder();
-
-        for (int i = 0; i < propsStr.length(); i++) {
-            char c = propsStr.charAt(i);
-            if (escaping) {
-                tagContentBuilder.append(c);
-                escaping = false;
-                continue;
-            }
-            switch (c) {
-                case '(':
-                    if (inTag) {
-                        if (i > 0) {
-                            tagContentBuilder.append(c);
-                        }
-                    }
-                    break;
-                case ')':
-                    if (inTag) {
-                        tagContentBuilder.append(c);
-                    }
-                    break;
-                case '[':
-                    inTag = true;
-                    String tagTemp = tagBuilder.toString();
-                    if (!tagTemp.isEmpty()) {
-                        tag = tagTemp.replaceAll("[a-z]", "");
-                    }
-                    tagContentBuilder = new StringBuilder();
-                    break;
-                case ']':
-                    inTag = false;
-                    tagBuilder = new StringBuilder();
-                    addProperty(props, tag, tagContentBuilder.toString());
-                    break;
-                case ';':
-                    break;
-                default:
-                    if (inTag) {
-                        if (c == '\\') {
-                            escaping = true;
-                            continue;
-                        }
-                        tagContentBuilder.append(c);
-                    } else {
-                        if (c != '\n' && c != '\r' && c != '\t' && c != ' ') {
-                            tagBuilder.append(c);
-                        }
-                    }
+        SGFTokenizer.Token token;
+        while ((token = tokenizer.next()) != SGFTokenizer.Token.END) {
+            if (token == SGFTokenizer.Token.IDENTIFIER) {
+                tag = tokenizer.getIdentifier();
+            } else if (token == SGFTokenizer.Token.VALUE) {
+                addProperty(props, tag, tokenizer.getValue());
             }
         }
     }
@@ -581,13 +420,15 @@ public class SGFParser {
         return sb.toString();
     }
 
-    private static void processPendingPros(Map<String, String> props) {
-//        props.forEach((key, value) -> Omega.board.addNodeProperty(key, value));
-//        props = new HashMap<String, String>();
-    }
-
     public static String Escaping(String in) {
-        String out = in.replaceAll("\\\\", "\\\\\\\\");
-        return out.replaceAll("\\]", "\\\\]");
+        StringBuilder out = new StringBuilder(in.length());
+        for (int i = 0; i < in.length(); i++) {
+            char c = in.charAt(i);
+            if (c == '\\' || c == ']') {
+                out.append('\\');
+            }
+            out.append(c);
+        }
+        return out.toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,402 @@
+package featurecat.omega.analysis;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Splits the bytes of a SGF file into tokens. The structure of a SGF file is plain ASCII, so it is found without
+ * decoding anything. Property values are only decoded, in the charset the game declares with CA, when they are asked
+ * for. In charsets like Shift_JIS or GBK, the second byte of a character can look like "]" or "\", so the byte after
+ * the first byte of such a character is skipped.
+ */
+public class SGFTokenizer {
+    public enum Token {
+        // "("
+        GAME_TREE_START,
+        // ")"
+        GAME_TREE_END,
+        // ";"
+        NODE,
+        // the letters before a value, eg "AB" in "AB[dd][pp]"
+        IDENTIFIER,
+        // the text between "[" and "]"
+        VALUE,
+        // no more tokens
+        END
+    }
+
+    // SGF says ISO-8859-1, but files without CA are nearly always UTF-8 nowadays
+    private static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
+
+    // every identifier of one or two capital letters, which are all the standard ones, by getCode. Made once so that
+    // reading an identifier doesn't make a new String, and identifiers can be compared cheaply
+    private static final int LETTERS = 27;
+    private static final String[] IDENTIFIERS = new String[LETTERS * LETTERS];
+
+    static {
+        IDENTIFIERS[0] = "";
+        for (char first = 'A'; first <= 'Z'; first++) {
+            IDENTIFIERS[getCode(first, 0)] = String.valueOf(first).intern();
+            for (char second = 'A'; second <= 'Z'; second++)
+                IDENTIFIERS[getCode(first, second)] = (String.valueOf(first) + second).intern();
+        }
+    }
+
+    // for each charset that isn't ASCII safe, which bytes start a character of two bytes or more
+    private static final Map<Charset, boolean[]> leadBytes = new ConcurrentHashMap<>();
+
+    private final ByteBuffer buffer;
+    private int position, limit;
+    private Charset charset = DEFAULT_CHARSET;
+    // the lead bytes of the charset, or null if it is ASCII safe
+    private boolean[] lead;
+    // whether or not the charset was given, instead of looked for in each game
+    private boolean charsetGiven;
+
+    // the identifier being read, the last identifier read, and where the last value starts and ends in the buffer
+    private byte[] identifier = new byte[16];
+    private int identifierLength;
+    private boolean inIdentifier;
+    private String lastIdentifier = "";
+    private int valueStart, valueEnd;
+    private boolean valueEscaped;
+
+    // scratch space for decoding values
+    private byte[] bytes = new byte[256];
+
+    /**
+     * @param buffer the bytes from its position to its limit are read
+     */
+    public SGFTokenizer(ByteBuffer buffer) {
+        this.buffer = buffer;
+        position = buffer.position();
+        limit = buffer.limit();
+    }
+
+    /**
+     * @param buffer  the bytes from its position to its limit are read
+     * @param charset the charset of the games in the buffer, eg found already with findCharset. CA isn't looked for
+     */
+    SGFTokenizer(ByteBuffer buffer, Charset charset) {
+        this(buffer);
+        this.charset = charset;
+        lead = getLeadBytes(charset);
+        charsetGiven = true;
+    }
+
+    /**
+     * Skips to the start of the next game, that is the next "(" followed by ";", and sets the charset to the one the
+     * game declares
+     *
+     * @return whether or not there is another game
+     */
+    public boolean findGameTree() {
+        if (!skipToGameTree())
+            return false;
+        detectCharset();
+        return true;
+    }
+
+    /**
+     * Looks for CA in the root node of a game. Only the value of CA is decoded, so a root node without CA, the usual
+     * case, costs one pass over its bytes
+     *
+     * @param start where the "(" starting the game is
+     * @param limit where to stop looking if the root node hasn't ended yet
+     * @return the charset declared, or the default one
+     */
+    static Charset findCharset(ByteBuffer buffer, int start, int limit) {
+        int valueStart = findRootProperty(buffer, start, limit, "CA");
+        if (valueStart < 0)
+            return DEFAULT_CHARSET;
+
+        int valueEnd = valueStart;
+        while (valueEnd < limit && buffer.get(valueEnd) != ']')
+            valueEnd++;
+        byte[] name = new byte[valueEnd - valueStart];
+        buffer.get(valueStart, name);
+        return lookupCharset(new String(name, StandardCharsets.ISO_8859_1).trim());
+    }
+
+    /**
+     * Looks for properties in the root node of a game. The bytes of the root node are only scanned, not tokenized
+     *
+     * @param start       where the "(" starting the game is
+     * @param limit       where to stop looking if the root node hasn't ended yet
+     * @param identifiers identifiers of two capital letters
+     * @return where the value of the first of the properties found starts, or -1 if the root node has none of them
+     */
+    static int findRootProperty(ByteBuffer buffer, int start, int limit, String... identifiers) {
+        boolean inRoot = false;
+        // the identifier being read, as its last two bytes and its length. Small letters are dropped, as in next()
+        int first = 0, second = 0, length = 0;
+        for (int i = start + 1; i < limit; i++) {
+            byte b = buffer.get(i);
+            switch (b) {
+                case ';':
+                    // the root node ends where the next node or game tree starts
+                    if (inRoot)
+                        return -1;
+                    inRoot = true;
+                    break;
+                case '(':
+                case ')':
+                    return -1;
+                case '[':
+                    if (length == 2) {
+                        for (String identifier : identifiers) {
+                            if (first == identifier.charAt(0) && second == identifier.charAt(1))
+                                return i + 1;
+                        }
+                    }
+                    length = 0;
+                    for (i++; i < limit && buffer.get(i) != ']'; i++) {
+                        if (buffer.get(i) == '\\')
+                            i++;
+                    }
+                    break;
+                default:
+                    if (!isWhitespace(b) && (b < 'a' || b > 'z')) {
+                        first = second;
+                        second = b;
+                        length++;
+                    }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether or not bytes that look like ASCII are always ASCII characters in a charset
+     */
+    static boolean isAsciiSafe(Charset charset) {
+        return charset.equals(StandardCharsets.UTF_8) || charset.canEncode() && charset.newEncoder().maxBytesPerChar() <= 1;
+    }
+
+    /**
+     * @return for each byte, whether or not it starts a character of two bytes or more in a charset. null for
+     * charsets where no byte that looks like ASCII can be part of another character
+     */
+    static boolean[] getLeadBytes(Charset charset) {
+        if (isAsciiSafe(charset))
+            return null;
+        return leadBytes.computeIfAbsent(charset, c -> {
+            // a lead byte makes one character out of the byte after it, even when that byte looks like "\" or "]"
+            boolean[] lead = new boolean[256];
+            CharsetDecoder decoder = c.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT);
+            for (int b = 0x80; b < 0x100; b++)
+                lead[b] = isOneCharacter(decoder, b, '\\') || isOneCharacter(decoder, b, ']');
+            return lead;
+        });
+    }
+
+    private static boolean isOneCharacter(CharsetDecoder decoder, int first, int second) {
+        try {
+            return decoder.reset().decode(ByteBuffer.wrap(new byte[]{(byte) first, (byte) second})).length() == 1;
+        } catch (CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the next token. Its text can be read with getIdentifier or getValue
+     */
+    public Token next() {
+        while (position < limit) {
+            byte b = buffer.get(position++);
+            switch (b) {
+                case '(':
+                    clearIdentifier();
+                    return Token.GAME_TREE_START;
+                case ')':
+                    clearIdentifier();
+                    return Token.GAME_TREE_END;
+                case ';':
+                    clearIdentifier();
+                    return Token.NODE;
+                case '[':
+                    if (inIdentifier) {
+                        // hand out the identifier first, and the value on the next call
+                        lastIdentifier = makeIdentifier();
+                        clearIdentifier();
+                        position--;
+                        return Token.IDENTIFIER;
+                    }
+                    readValue();
+                    return Token.VALUE;
+                default:
+                    if (!isWhitespace(b))
+                        appendIdentifier(b);
+            }
+        }
+        return Token.END;
+    }
+
+    /**
+     * Small letters in identifiers are dropped, for the long format of old SGF files and Smart-Go files, eg
+     * "PlayerBlack" is read as "PB". It is the default format of mgt, an old SGF tool. (Mgt is still supported in
+     * Debian and Ubuntu.)
+     *
+     * @return the identifier just read. Interned, so the same identifier is always the same String
+     */
+    public String getIdentifier() {
+        return lastIdentifier;
+    }
+
+    /**
+     * @return the value just read, decoded and with escapes removed
+     */
+    public String getValue() {
+        int length = valueEnd - valueStart;
+        if (length > bytes.length)
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+        buffer.get(valueStart, bytes, 0, length);
+
+        if (valueEscaped) {
+            // any char following "\" is inserted verbatim
+            // (ref) "3.2. Text" in https://www.red-bean.com/sgf/sgf4.html
+            int unescaped = 0;
+            for (int i = 0; i < length; i++) {
+                if (isLeadByte(bytes[i]) && i + 1 < length)
+                    bytes[unescaped++] = bytes[i++];
+                else if (bytes[i] == '\\' && i + 1 < length)
+                    i++;
+                bytes[unescaped++] = bytes[i];
+            }
+            length = unescaped;
+        }
+        return new String(bytes, 0, length, charset);
+    }
+
+    /**
+     * Reads the value just read as a point, without decoding it
+     *
+     * @return the point as {x, y}, or null for a pass or a malformed point
+     */
+    public int[] getPoint() {
+        if (valueEnd - valueStart < 2)
+            return null;
+
+        byte x = buffer.get(valueStart), y = buffer.get(valueStart + 1);
+        if (x == 't' && y == 't' && valueEnd - valueStart == 2)
+            return null;
+        return new int[]{x - 'a', y - 'a'};
+    }
+
+    /**
+     * @return the charset values are decoded with
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    private void readValue() {
+        valueStart = position;
+        valueEscaped = false;
+        while (position < limit) {
+            byte b = buffer.get(position);
+            if (isLeadByte(b)) {
+                // the next byte belongs to the same character, whatever it looks like
+                position += 2;
+                continue;
+            }
+            if (b == ']')
+                break;
+            if (b == '\\') {
+                valueEscaped = true;
+                position++;
+            }
+            position++;
+        }
+        valueEnd = Math.min(position, limit);
+        // skip the "]"
+        position++;
+    }
+
+    private boolean isLeadByte(byte b) {
+        return b < 0 && lead != null && lead[b & 0xFF];
+    }
+
+    private void appendIdentifier(byte b) {
+        inIdentifier = true;
+        if (b >= 'a' && b <= 'z')
+            return;
+
+        if (identifierLength == identifier.length)
+            identifier = Arrays.copyOf(identifier, 2 * identifier.length);
+        identifier[identifierLength++] = b;
+    }
+
+    private void clearIdentifier() {
+        identifierLength = 0;
+        inIdentifier = false;
+    }
+
+    private String makeIdentifier() {
+        if (identifierLength == 0)
+            return IDENTIFIERS[0];
+        if (identifierLength <= 2 && isCapital(identifier[0]) && (identifierLength == 1 || isCapital(identifier[1])))
+            return IDENTIFIERS[getCode(identifier[0], identifierLength == 2 ? identifier[1] : 0)];
+        return new String(identifier, 0, identifierLength, StandardCharsets.ISO_8859_1).intern();
+    }
+
+    private static boolean isCapital(byte b) {
+        return b >= 'A' && b <= 'Z';
+    }
+
+    /**
+     * @param second the second letter, or 0 for none
+     */
+    private static int getCode(int first, int second) {
+        return (first - 'A' + 1) * LETTERS + (second == 0 ? 0 : second - 'A' + 1);
+    }
+
+    private boolean skipToGameTree() {
+        for (; position < limit; position++) {
+            if (buffer.get(position) != '(')
+                continue;
+
+            int next = position + 1;
+            while (next < limit && isWhitespace(buffer.get(next)))
+                next++;
+            if (next < limit && buffer.get(next) == ';') {
+                clearIdentifier();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the charset to the one the game starting at position declares, unless it was given
+     */
+    private void detectCharset() {
+        if (charsetGiven)
+            return;
+        charset = findCharset(buffer, position, limit);
+        lead = getLeadBytes(charset);
+    }
+
+    private static Charset lookupCharset(String name) {
+        try {
+            return Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            return DEFAULT_CHARSET;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+}
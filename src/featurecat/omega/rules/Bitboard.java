@@ -0,0 +1,261 @@
+package featurecat.omega.rules;
+
+/**
+ * A set of board points, one bit per point, packed into six longs. Bit i stands for the point with array index i,
+ * as given by Board.getIndex(x, y).
+ *
+ * Bitboards are immutable. Operations return new bitboards, which lets positions share them freely between threads.
+ */
+public final class Bitboard {
+    private static final int SIZE = Board.BOARD_SIZE * Board.BOARD_SIZE;
+    private static final int WORDS = (SIZE + 63) / 64;
+
+    public static final Bitboard EMPTY = new Bitboard(new long[WORDS]);
+    public static final Bitboard FULL;
+
+    // points with y == 0 and y == BOARD_SIZE - 1. Shifting by one along y must not wrap across these
+    private static final Bitboard TOP_EDGE, BOTTOM_EDGE;
+
+    static {
+        long[] full = new long[WORDS];
+        long[] top = new long[WORDS];
+        long[] bottom = new long[WORDS];
+        for (int i = 0; i < SIZE; i++) {
+            full[i >>> 6] |= 1L << i;
+            if (i % Board.BOARD_SIZE == 0)
+                top[i >>> 6] |= 1L << i;
+            if (i % Board.BOARD_SIZE == Board.BOARD_SIZE - 1)
+                bottom[i >>> 6] |= 1L << i;
+        }
+        FULL = new Bitboard(full);
+        TOP_EDGE = new Bitboard(top);
+        BOTTOM_EDGE = new Bitboard(bottom);
+    }
+
+    private final long[] words;
+
+    private Bitboard(long[] words) {
+        this.words = words;
+    }
+
+    /**
+     * @param stones a board position
+     * @param color  the stone type to collect
+     * @return the points of stones holding exactly this stone type
+     */
+    public static Bitboard of(Stone[] stones, Stone color) {
+        long[] words = new long[WORDS];
+        for (int i = 0; i < SIZE; i++) {
+            if (stones[i] == color)
+                words[i >>> 6] |= 1L << i;
+        }
+        return new Bitboard(words);
+    }
+
+    /**
+     * @param index array index of a point -- must be valid
+     * @return a bitboard containing only this point
+     */
+    public static Bitboard ofPoint(int index) {
+        long[] words = new long[WORDS];
+        words[index >>> 6] = 1L << index;
+        return new Bitboard(words);
+    }
+
+    public boolean get(int index) {
+        return (words[index >>> 6] & 1L << index) != 0;
+    }
+
+    public Bitboard with(int index) {
+        long[] result = words.clone();
+        result[index >>> 6] |= 1L << index;
+        return new Bitboard(result);
+    }
+
+    public Bitboard without(int index) {
+        long[] result = words.clone();
+        result[index >>> 6] &= ~(1L << index);
+        return new Bitboard(result);
+    }
+
+    public Bitboard and(Bitboard other) {
+        long[] result = new long[WORDS];
+        for (int i = 0; i < WORDS; i++)
+            result[i] = words[i] & other.words[i];
+        return new Bitboard(result);
+    }
+
+    public Bitboard or(Bitboard other) {
+        long[] result = new long[WORDS];
+        for (int i = 0; i < WORDS; i++)
+            result[i] = words[i] | other.words[i];
+        return new Bitboard(result);
+    }
+
+    public Bitboard xor(Bitboard other) {
+        long[] result = new long[WORDS];
+        for (int i = 0; i < WORDS; i++)
+            result[i] = words[i] ^ other.words[i];
+        return new Bitboard(result);
+    }
+
+    public Bitboard andNot(Bitboard other) {
+        long[] result = new long[WORDS];
+        for (int i = 0; i < WORDS; i++)
+            result[i] = words[i] & ~other.words[i];
+        return new Bitboard(result);
+    }
+
+    /**
+     * @return every point of the board not in this set
+     */
+    public Bitboard not() {
+        return FULL.andNot(this);
+    }
+
+    /**
+     * @return the points adjacent to any point of this set, not including the set itself unless it touches itself
+     */
+    public Bitboard neighbours() {
+        long[] result = new long[WORDS];
+        long[] top = TOP_EDGE.words;
+        long[] bottom = BOTTOM_EDGE.words;
+        long[] full = FULL.words;
+
+        for (int i = 0; i < WORDS; i++) {
+            long lower = i > 0 ? words[i - 1] : 0;
+            long upper = i < WORDS - 1 ? words[i + 1] : 0;
+            long lowerNotBottom = i > 0 ? words[i - 1] & ~bottom[i - 1] : 0;
+            long upperNotTop = i < WORDS - 1 ? words[i + 1] & ~top[i + 1] : 0;
+
+            // y + 1 and y - 1 are neighbouring bits, x + 1 and x - 1 are BOARD_SIZE bits apart
+            long down = (words[i] & ~bottom[i]) << 1 | lowerNotBottom >>> 63;
+            long up = (words[i] & ~top[i]) >>> 1 | upperNotTop << 63;
+            long right = words[i] << Board.BOARD_SIZE | lower >>> (64 - Board.BOARD_SIZE);
+            long left = words[i] >>> Board.BOARD_SIZE | upper << (64 - Board.BOARD_SIZE);
+
+            result[i] = (down | up | right | left) & full[i];
+        }
+        return new Bitboard(result);
+    }
+
+    /**
+     * Grows this set through mask until it stops changing, eg the chain containing a stone
+     *
+     * @param mask the points the fill may spread to
+     * @return every point of mask connected to this set, plus this set
+     */
+    public Bitboard floodFill(Bitboard mask) {
+        Bitboard filled = this;
+        while (true) {
+            Bitboard grown = filled.or(filled.neighbours().and(mask));
+            if (grown.equals(filled))
+                return filled;
+            filled = grown;
+        }
+    }
+
+    /**
+     * @param index  array index of a stone
+     * @param stones all stones of the same color as that stone
+     * @return the chain containing the stone
+     */
+    public static Bitboard chainAt(int index, Bitboard stones) {
+        return ofPoint(index).floodFill(stones);
+    }
+
+    /**
+     * @param chain a chain of stones
+     * @param empty the empty points of the board
+     * @return the liberties of the chain
+     */
+    public static Bitboard liberties(Bitboard chain, Bitboard empty) {
+        return chain.neighbours().and(empty);
+    }
+
+    /**
+     * Finds the stones captured by playing at index. The stone at index must already be part of friendly
+     *
+     * @param index    array index of the stone just played
+     * @param friendly stones of the player who moved
+     * @param enemy    stones of the opponent
+     * @return the enemy stones left without liberties next to the move
+     */
+    public static Bitboard captures(int index, Bitboard friendly, Bitboard enemy) {
+        Bitboard empty = friendly.or(enemy).not();
+        Bitboard captured = EMPTY;
+        Bitboard candidates = ofPoint(index).neighbours().and(enemy);
+
+        for (int neighbour = candidates.nextSetBit(0); neighbour >= 0; neighbour = candidates.nextSetBit(neighbour + 1)) {
+            if (captured.get(neighbour))
+                continue;
+            Bitboard chain = chainAt(neighbour, enemy);
+            if (liberties(chain, empty).isEmpty())
+                captured = captured.or(chain);
+        }
+        return captured;
+    }
+
+    /**
+     * @param from the index to start searching at
+     * @return the lowest index in this set greater than or equal to from, or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        int word = from >>> 6;
+        if (word >= WORDS)
+            return -1;
+
+        long bits = words[word] & (-1L << from);
+        while (true) {
+            if (bits != 0)
+                return word * 64 + Long.numberOfTrailingZeros(bits);
+            if (++word == WORDS)
+                return -1;
+            bits = words[word];
+        }
+    }
+
+    public int count() {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0)
+                return false;
+        }
+        return true;
+    }
+
+    public boolean intersects(Bitboard other) {
+        for (int i = 0; i < WORDS; i++) {
+            if ((words[i] & other.words[i]) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Bitboard))
+            return false;
+
+        long[] other = ((Bitboard) o).words;
+        for (int i = 0; i < WORDS; i++) {
+            if (words[i] != other[i])
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        long hash = 0;
+        for (long word : words)
+            hash = hash * 31 + word;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -6,6 +6,8 @@ import featurecat.omega.ui.BoardRenderer;
 import featurecat.omega.ui.PlaceMode;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.DoubleFunction;
 import java.util.stream.Collectors;
 
@@ -15,6 +17,32 @@ public class Board {
 
     private BoardHistoryList history;
 
+    // the position at the head of history. Mutators hold the lock and publish a new snapshot when they are done,
+    // readers just take the latest one, so they always see a complete position without locking
+    private final AtomicReference<BoardData> snapshot;
+    // the nodes of history, published the same way
+    private final AtomicReference<BoardHistoryList.Snapshot> historySnapshot;
+
+    // chains and liberties of the position at the head of history, used to find captures quickly
+    private final ChainTracker chains = new ChainTracker();
+    private final int[] captured = new int[BOARD_SIZE * BOARD_SIZE];
+
+    private final List<BoardListener> listeners = new CopyOnWriteArrayList<>();
+
+    // the game whose main line is played into history, and the last of its nodes played so far. The rest of the main
+    // line is only played when it is visited, so loading a game is cheap. null once the whole game is in history, or
+    // once history leaves the game
+    private GameTree game;
+    private int gameNode;
+    private boolean gameMoveStarted, gameAddPass;
+
+    // moves of a loaded game played ahead of the one visited, so that the positions around it can be read from
+    // history snapshots, eg by the heatmap prefetcher
+    public static int playAhead = 16;
+
+    // what a move did to history
+    private static final int UNCHANGED = 0, REPLAYED = 1, ADDED = 2;
+
     public Board() {
         Stone[] stones = new Stone[BOARD_SIZE * BOARD_SIZE];
         for (int i = 0; i < stones.length; i++)
@@ -24,6 +52,8 @@ public class Board {
         int[] lastMove = null;
 
         history = new BoardHistoryList(new BoardData(stones, lastMove, Stone.EMPTY, blackToPlay, new Zobrist(), 0, new int[BOARD_SIZE * BOARD_SIZE]));
+        snapshot = new AtomicReference<>(history.getData());
+        historySnapshot = new AtomicReference<>(history.snapshot());
     }
 
     public Board(BoardHistoryList history) {
@@ -35,6 +65,8 @@ public class Board {
         int[] lastMove = null;
 
         this.history = history;
+        snapshot = new AtomicReference<>(history.getData());
+        historySnapshot = new AtomicReference<>(history.snapshot());
     }
 
     /**
@@ -96,30 +128,40 @@ public class Board {
      */
     public void pass(Stone color) {
         synchronized (this) {
+            materialize(history.getCurrentIndex() + 1);
+            int result = passStone(color);
+            if (result == ADDED)
+                game = null;
+            if (result != UNCHANGED)
+                publish();
+        }
+    }
 
-            // check to see if this move is being replayed in history
-            BoardData next = history.getNext();
-            if (next != null && next.lastMove == null) {
-                // this is the next move in history. Just increment history so that we don't erase the redo's
-                history.next();
-                Omega.frame.repaint();
-                return;
-            }
-
-            Stone[] stones = history.getStones().clone();
-            Zobrist zobrist = history.getZobrist();
-            int moveNumber = history.getMoveNumber() + 1;
-            int[] moveNumberList = history.getMoveNumberList().clone();
-
-            // build the new game state
-            BoardData newState = new BoardData(stones, null, color, !history.isBlacksTurn(), zobrist, moveNumber, moveNumberList);
+    /**
+     * Passes without notifying anyone. Call with the lock held
+     *
+     * @return what the pass did to history
+     */
+    private int passStone(Stone color) {
+        // check to see if this move is being replayed in history
+        BoardHistoryNode next = history.getCurrentHistoryNode().next();
+        if (next != null && next.getLastMove() == null) {
+            // this is the next move in history. Just increment history so that we don't erase the redo's
+            history.next();
+            return REPLAYED;
+        }
 
+        Stone[] stones = history.getStones().clone();
+        Zobrist zobrist = history.getZobrist();
+        int moveNumber = history.getMoveNumber() + 1;
+        int[] moveNumberList = history.getMoveNumberList().clone();
 
-            // update history with pass
-            history.add(newState);
+        // build the new game state
+        BoardData newState = new BoardData(stones, null, color, !history.isBlacksTurn(), zobrist, moveNumber, moveNumberList);
 
-            Omega.frame.repaint();
-        }
+        // update history with pass
+        history.add(newState);
+        return ADDED;
     }
 
     /**
@@ -138,59 +180,66 @@ public class Board {
      */
     public void place(int x, int y, Stone color) {
         synchronized (this) {
-            if (!isValid(x, y) || history.getStones()[getIndex(x, y)] != Stone.EMPTY)
-                return;
-
-            // check to see if this coordinate is being replayed in history
-            BoardData next = history.getNext();
-            if (next != null && next.lastMove != null && next.lastMove[0] == x && next.lastMove[1] == y) {
-                // this is the next coordinate in history. Just increment history so that we don't erase the redo's
-                history.next();
-                Omega.frame.repaint();
-                // should be opposite from the bottom case
-                return;
-            }
-
-            // load a copy of the data at the current node of history
-            Stone[] stones = history.getStones().clone();
-            Zobrist zobrist = history.getZobrist();
-            int[] lastMove = new int[]{x, y}; // keep track of the last played stone
-            int moveNumber = history.getMoveNumber() + 1;
-            int[] moveNumberList = history.getMoveNumberList().clone();
-
-            moveNumberList[Board.getIndex(x, y)] = moveNumber;
+            materialize(history.getCurrentIndex() + 1);
+            int result = placeStone(x, y, color);
+            if (result == ADDED)
+                game = null;
+            if (result != UNCHANGED)
+                publish();
+        }
+    }
 
-            // set the stone at (x, y) to color
-            stones[getIndex(x, y)] = color;
-            zobrist.toggleStone(x, y, color);
+    /**
+     * Places a stone without notifying anyone. Call with the lock held
+     *
+     * @return what the move did to history
+     */
+    private int placeStone(int x, int y, Stone color) {
+        if (!isValid(x, y) || history.getStones()[getIndex(x, y)] != Stone.EMPTY)
+            return UNCHANGED;
+
+        // check to see if this coordinate is being replayed in history
+        BoardHistoryNode next = history.getCurrentHistoryNode().next();
+        if (next != null && next.getLastMove() != null && next.getLastMove()[0] == x && next.getLastMove()[1] == y) {
+            // this is the next coordinate in history. Just increment history so that we don't erase the redo's
+            history.next();
+            // should be opposite from the bottom case
+            return REPLAYED;
+        }
 
-            // remove enemy stones
-            removeDeadChain(x + 1, y, color.opposite(), stones, zobrist);
-            removeDeadChain(x, y + 1, color.opposite(), stones, zobrist);
-            removeDeadChain(x - 1, y, color.opposite(), stones, zobrist);
-            removeDeadChain(x, y - 1, color.opposite(), stones, zobrist);
+        // load a copy of the data at the current node of history
+        if (!chains.isTracking(history.getStones()))
+            chains.reset(history.getStones());
+        Stone[] stones = history.getStones().clone();
+        Zobrist zobrist = history.getZobrist();
+        int[] lastMove = new int[]{x, y}; // keep track of the last played stone
+        int moveNumber = history.getMoveNumber() + 1;
+        int[] moveNumberList = history.getMoveNumberList().clone();
 
-            // check to see if the player made a suicidal coordinate
-            boolean isSuicidal = removeDeadChain(x, y, color, stones, zobrist);
+        moveNumberList[Board.getIndex(x, y)] = moveNumber;
 
-            for (int i = 0; i < BOARD_SIZE * BOARD_SIZE; i++) {
-                if (stones[i].equals(Stone.EMPTY)) {
-                    moveNumberList[i] = 0;
-                }
-            }
+        // set the stone at (x, y) to color and remove enemy stones
+        int capturedCount = chains.play(x, y, color, stones, zobrist, captured);
 
-            // build the new game state
-            BoardData newState = new BoardData(stones, lastMove, color, !history.isBlacksTurn(), zobrist, moveNumber, moveNumberList);
+        // check to see if the player made a suicidal coordinate
+        boolean isSuicidal = capturedCount < 0;
 
-            // don't make this coordinate if it is suicidal or violates superko
-            if (isSuicidal || history.violatesSuperko(newState))
-                return;
+        for (int i = 0; i < capturedCount; i++) {
+            moveNumberList[captured[i]] = 0;
+        }
 
-            // update history with this coordinate
-            history.add(newState);
+        // build the new game state
+        BoardData newState = new BoardData(stones, lastMove, color, !history.isBlacksTurn(), zobrist, moveNumber, moveNumberList);
 
-            Omega.frame.repaint();
+        // don't make this coordinate if it is suicidal or violates superko
+        if (isSuicidal || history.violatesSuperko(newState)) {
+            chains.invalidate();
+            return UNCHANGED;
         }
+
+        // update history with this coordinate
+        history.add(newState);
+        return ADDED;
     }
 
     /**
@@ -240,115 +289,67 @@ public class Board {
         place(coordinates[0], coordinates[1]);
     }
 
-    /**
-     * Removes a chain if it has no liberties
-     *
-     * @param x       x coordinate -- needn't be valid
-     * @param y       y coordinate -- needn't be valid
-     * @param color   the color of the chain to remove
-     * @param stones  the stones array to modify
-     * @param zobrist the zobrist object to modify
-     * @return whether or not stones were removed
-     */
-    private boolean removeDeadChain(int x, int y, Stone color, Stone[] stones, Zobrist zobrist) {
-        if (!isValid(x, y) || stones[getIndex(x, y)] != color)
-            return false;
-
-        boolean hasLiberties = hasLibertiesHelper(x, y, color, stones);
+    private void deleteStone(int x, int y, Stone[] stones, Zobrist zobrist) {
+        Stone color = stones[getIndex(x, y)];
+        stones[getIndex(x, y)] = Stone.EMPTY;
+        zobrist.toggleStone(x, y, color.unrecursed());
+    }
 
-        // either remove stones or reset what hasLibertiesHelper does to the board
-        cleanupHasLibertiesHelper(x, y, color.recursed(), stones, zobrist, !hasLiberties);
+    private void deleteStone(int x, int y) {
+        synchronized (this) {
+            if (history.getStones()[getIndex(x, y)] == Stone.EMPTY) {
+                return;
+            }
 
-        // if hasLiberties is false, then we removed stones
-        return !hasLiberties;
-    }
+            // load a copy of the data at the current node of history
+            Stone[] stones = history.getStones().clone();
+            Zobrist zobrist = history.getZobrist();
+            int moveNumber = history.getMoveNumber() + 1;
+            int[] moveNumberList = history.getMoveNumberList().clone();
 
-    /**
-     * Recursively determines if a chain has liberties. Alters the state of stones, so it must be counteracted
-     *
-     * @param x      x coordinate -- needn't be valid
-     * @param y      y coordinate -- needn't be valid
-     * @param color  the color of the chain to be investigated
-     * @param stones the stones array to modify
-     * @return whether or not this chain has liberties
-     */
-    private boolean hasLibertiesHelper(int x, int y, Stone color, Stone[] stones) {
-        if (!isValid(x, y))
-            return false;
+            deleteStone(x, y, stones, zobrist);
+            moveNumberList[getIndex(x, y)] = 0;
 
-        if (stones[getIndex(x, y)] == Stone.EMPTY)
-            return true; // a liberty was found
-        else if (stones[getIndex(x, y)] != color)
-            return false; // we are either neighboring an enemy stone, or one we've already recursed on
+            // build the new game state
+            BoardData newState = new BoardData(stones, null, Stone.EMPTY, !history.isBlacksTurn(), zobrist, moveNumber, moveNumberList);
 
-        // set this index to be the recursed color to keep track of where we've already searched
-        stones[getIndex(x, y)] = color.recursed();
+            // TODO how to update leelaz? This might be a problem.
+            // Omega.leelaz.playMove(color, "pass");
 
-        // set removeDeadChain to true if any recursive calls return true. Recurse in all 4 directions
-        boolean hasLiberties = hasLibertiesHelper(x + 1, y, color, stones) ||
-                hasLibertiesHelper(x, y + 1, color, stones) ||
-                hasLibertiesHelper(x - 1, y, color, stones) ||
-                hasLibertiesHelper(x, y - 1, color, stones);
+            // update history, leaving the game being played
+            history.add(newState);
+            game = null;
 
-        return hasLiberties;
+            publish();
+        }
     }
 
     /**
-     * cleans up what hasLibertyHelper does to the board state
+     * Registers a listener to be notified after every change to this board
      *
-     * @param x            x coordinate -- needn't be valid
-     * @param y            y coordinate -- needn't be valid
-     * @param color        color to clean up. Must be a recursed stone type
-     * @param stones       the stones array to modify
-     * @param zobrist      the zobrist object to modify
-     * @param removeStones if true, we will remove all these stones. otherwise, we will set them to their unrecursed version
+     * @param listener the listener to add
      */
-    private void cleanupHasLibertiesHelper(int x, int y, Stone color, Stone[] stones, Zobrist zobrist, boolean removeStones) {
-        if (!isValid(x, y) || stones[getIndex(x, y)] != color)
-            return;
-
-        if (removeStones) {
-            deleteStone(x, y, stones, zobrist);
-        } else {
-            stones[getIndex(x, y)] = color.unrecursed();
-        }
+    public void addListener(BoardListener listener) {
+        listeners.add(listener);
+    }
 
-        // use the flood fill algorithm to replace all adjacent recursed stones
-        cleanupHasLibertiesHelper(x + 1, y, color, stones, zobrist, removeStones);
-        cleanupHasLibertiesHelper(x, y + 1, color, stones, zobrist, removeStones);
-        cleanupHasLibertiesHelper(x - 1, y, color, stones, zobrist, removeStones);
-        cleanupHasLibertiesHelper(x, y - 1, color, stones, zobrist, removeStones);
+    public void removeListener(BoardListener listener) {
+        listeners.remove(listener);
     }
 
-    private void deleteStone(int x, int y, Stone[] stones, Zobrist zobrist) {
-        Stone color = stones[getIndex(x, y)];
-        stones[getIndex(x, y)] = Stone.EMPTY;
-        zobrist.toggleStone(x, y, color.unrecursed());
+    /**
+     * Publishes the position at the head of history to readers, then notifies listeners. Call with the lock held
+     */
+    private void publish() {
+        snapshot.set(history.getData());
+        historySnapshot.set(history.snapshot());
+        fireBoardChanged();
     }
 
-    private void deleteStone(int x, int y) {
-        if (getStones()[getIndex(x, y)] == Stone.EMPTY) {
-            return;
+    private void fireBoardChanged() {
+        for (BoardListener listener : listeners) {
+            listener.boardChanged(this);
         }
-
-        // load a copy of the data at the current node of history
-        Stone[] stones = history.getStones().clone();
-        Zobrist zobrist = history.getZobrist();
-        int moveNumber = history.getMoveNumber() + 1;
-        int[] moveNumberList = history.getMoveNumberList().clone();
-
-        deleteStone(x, y, stones, zobrist);
-
-        // build the new game state
-        BoardData newState = new BoardData(stones, null, Stone.EMPTY, !history.isBlacksTurn(), zobrist, moveNumber, moveNumberList);
-
-        // TODO how to update leelaz? This might be a problem.
-        // Omega.leelaz.playMove(color, "pass");
-
-        // update history
-        history.add(newState);
-
-        Omega.frame.repaint();
     }
 
     /**
@@ -357,7 +358,25 @@ public class Board {
      * @return the stones array corresponding to the current board state
      */
     public Stone[] getStones() {
-        return history.getStones();
+        return snapshot.get().stones;
+    }
+
+    /**
+     * get current board state as a bitboard, for callers that work on many positions at once
+     *
+     * @param color BLACK, WHITE or EMPTY
+     * @return the points of the current board state holding this stone type
+     */
+    public Bitboard getBitboard(Stone color) {
+        BoardData data = getData();
+        switch (color) {
+            case BLACK:
+                return data.getBlack();
+            case WHITE:
+                return data.getWhite();
+            default:
+                return data.getEmpty();
+        }
     }
 
     /**
@@ -366,7 +385,7 @@ public class Board {
      * @return the last played stone
      */
     public int[] getLastMove() {
-        return history.getLastMove();
+        return snapshot.get().lastMove;
     }
 
     /**
@@ -375,7 +394,7 @@ public class Board {
      * @return the int array corresponding to the current board move number
      */
     public int[] getMoveNumberList() {
-        return history.getMoveNumberList();
+        return snapshot.get().moveNumberList;
     }
 
     /**
@@ -383,22 +402,157 @@ public class Board {
      */
     public boolean nextMove() {
         synchronized (this) {
+            materializeAround(history.getCurrentIndex() + 1);
             if (history.next() != null) {
-                // update leelaz board position, before updating to next node
-                history.getData(); // todo not needed just kept for paranoia
-                Omega.frame.repaint();
+                publish();
                 return true;
             }
             return false;
         }
     }
 
+    /**
+     * Thread safe. The returned position never changes, so it can be read while the board moves on
+     *
+     * @return the current position
+     */
     public BoardData getData() {
-        return history.getData();
+        return snapshot.get();
     }
 
+    /**
+     * Thread safe, without locking. The nodes of a loaded game are only there once they have been played
+     *
+     * @return the nodes of history and the current one, as they are now
+     */
+    public BoardHistoryList.Snapshot getHistorySnapshot() {
+        return historySnapshot.get();
+    }
+
+    /**
+     * The history is changed by the board's mutators under the board's lock, so it is not safe to read from other
+     * threads. Use getData() for that. Plays the rest of a loaded game first, so that history holds all of it
+     */
     public BoardHistoryList getHistory() {
-        return history;
+        synchronized (this) {
+            materialize(Integer.MAX_VALUE);
+            return history;
+        }
+    }
+
+    /**
+     * Replaces history with a game, starting from the first position of history. Only the game's main line is
+     * played, and only as far as it is visited: loading a game plays nothing. Thread safe
+     *
+     * @param game the game to play
+     */
+    public void load(GameTree game) {
+        synchronized (this) {
+            history = new BoardHistoryList(history.getNode(0).getData());
+            this.game = game;
+            gameNode = GameTree.NONE;
+            gameMoveStarted = false;
+            gameAddPass = true;
+            publish();
+        }
+    }
+
+    /**
+     * Plays the main line of the game being loaded until history has a node at index, or the game ends. Head stays
+     * where it is. Call with the lock held
+     */
+    private void materialize(int index) {
+        if (game == null || index < history.size())
+            return;
+
+        int headIndex = history.getCurrentIndex();
+        history.seek(history.size() - 1);
+        while (game != null && history.size() <= index)
+            playNextNode();
+        history.seek(headIndex);
+        historySnapshot.set(history.snapshot());
+    }
+
+    /**
+     * Plays the game being loaded up to playAhead moves after index. Call with the lock held
+     */
+    private void materializeAround(int index) {
+        materialize(index > Integer.MAX_VALUE - playAhead ? Integer.MAX_VALUE : index + playAhead);
+    }
+
+    /**
+     * Plays the next node of the game's main line at the end of history, the way SGF files have always been played
+     * here: setup stones are played as moves, and setup stones after the first move come after a pass. Call with the
+     * lock held and head at the end of history
+     */
+    private void playNextNode() {
+        int node = gameNode == GameTree.NONE ? GameTree.ROOT : game.getFirstChild(gameNode);
+        if (node == GameTree.NONE) {
+            // the whole game is in history
+            game = null;
+            return;
+        }
+
+        gameNode = node;
+        if (game.hasVariations(node))
+            gameAddPass = true;
+
+        for (int i = game.getActionStart(node); i < game.getActionEnd(node); i++) {
+            int action = game.getAction(i);
+            Stone color = GameTree.getColor(action);
+            int point = GameTree.getPoint(action);
+            switch (GameTree.getKind(action)) {
+                case GameTree.MOVE:
+                    gameMoveStarted = true;
+                    gameAddPass = true;
+                    playPoint(point, color);
+                    break;
+                case GameTree.SETUP:
+                    if (!gameMoveStarted) {
+                        playPoint(point, color);
+                        break;
+                    }
+                    if (gameAddPass) {
+                        passStone(color);
+                        gameAddPass = false;
+                    }
+                    if (point >= 0)
+                        placeStone(point / BOARD_SIZE, point % BOARD_SIZE, color);
+                    break;
+                case GameTree.CLEAR:
+                    // stones aren't removed, but the node still gets its own position
+                    if (gameMoveStarted && gameAddPass) {
+                        passStone(history.getLastMoveColor() == Stone.WHITE ? Stone.BLACK : Stone.WHITE);
+                        gameAddPass = false;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void playPoint(int point, Stone color) {
+        if (point == GameTree.PASS)
+            passStone(color);
+        else if (point >= 0)
+            placeStone(point / BOARD_SIZE, point % BOARD_SIZE, color);
+    }
+
+    /**
+     * Goes straight to a move in history, thread safe. Only notifies listeners once, however far away the move is
+     *
+     * @param moveNumber the move number to go to. Clamped to the moves in history
+     * @return whether or not the position changed
+     */
+    public boolean seek(int moveNumber) {
+        synchronized (this) {
+            int firstMoveNumber = history.getNode(0).getMoveNumber();
+            materializeAround(moveNumber - firstMoveNumber);
+            if (history.seek(moveNumber - firstMoveNumber) != null) {
+                publish();
+                return true;
+            }
+            return false;
+        }
     }
 
     /**
@@ -407,7 +561,7 @@ public class Board {
     public boolean previousMove() {
         synchronized (this) {
             if (history.previous() != null) {
-                Omega.frame.repaint();
+                publish();
                 return true;
             }
             return false;
@@ -416,63 +570,72 @@ public class Board {
 
     public static int stoneInfluence = 7;
 
+    public static final InfluenceModel[] influenceModels = {new FloodInfluenceModel(), new DistanceInfluenceModel(), new BouzyInfluenceModel()};
+    // chosen on the event dispatch thread, read by the render loop and the prefetcher
+    public static volatile int influenceModelIndex = 0;
+
+    // heatmaps only depend on the position and the parameters, so they can be shared between boards
+    private static final HeatmapCache heatmapCache = new HeatmapCache(256);
+
+    // running flood influence sums, updated from one position to the next on cache misses
+    private final InfluenceField influenceField = new InfluenceField();
+
     public double[] getInfluenceHeatmap() {
-        double[] heatmap = new double[BOARD_SIZE * BOARD_SIZE];
+        return getInfluenceHeatmap(getData());
+    }
 
-        for (int x = 0; x < BOARD_SIZE; x++) {
-            for (int y = 0; y < BOARD_SIZE; y++) {
-                int index = getIndex(x, y);
-                if (getStones()[index] != Stone.EMPTY) {
-                    int initial = getStones()[index].isBlack() ? 1 : -1;
-                    floodAdd(heatmap, new boolean[BOARD_SIZE * BOARD_SIZE], x, y, x, y, initial, 1.0 / stoneInfluence);
-                }
-            }
-        }
+    public double[] getInfluenceHeatmap(BoardData data) {
+        return getInfluenceHeatmap(data, getInfluenceModel(), stoneInfluence, BoardRenderer.useGradient);
+    }
 
-        if (BoardRenderer.useGradient) {
-            // prevent stones from being too bright
-            for (int x = 0; x < BOARD_SIZE; x++) {
-                for (int y = 0; y < BOARD_SIZE; y++) {
-                    int index = getIndex(x, y);
-                    if (getStones()[index].isBlack()) {
-                        heatmap[index] = Math.max(0, Math.min(heatmap[index], 0.5));
-                    } else if (getStones()[index].isWhite()) {
-                        heatmap[index] = Math.min(0, Math.max(heatmap[index], -0.5));
-                    }
-                }
-            }
-        }
+    /**
+     * @return the influence model chosen by the user
+     */
+    public static InfluenceModel getInfluenceModel() {
+        return influenceModels[influenceModelIndex];
+    }
 
-        return Arrays.stream(heatmap).map(val -> Math.max(0, Math.min(1, (val + 1) / 2))).toArray();
-    }
-
-    private void floodAdd(double[] heatmap, boolean[] seen, int originalX, int originalY, int x, int y, double initial, double degrade) {
-        if (isValid(x, y) && !seen[getIndex(x, y)]) { // we havent seen before
-            heatmap[getIndex(x, y)] += initial;
-            seen[getIndex(x, y)] = true;
-            if (initial > 0) {
-                // if we run into enemy, we cant repopulate, is the rule.
-                if (getStones()[getIndex(x, y)].isWhite()) {
-                    return;
-                }
-                initial = Math.max(0, initial - degrade);
-            } else {
-                if (getStones()[getIndex(x, y)].isBlack()) {
-                    return;
-                }
-                initial = Math.min(0, initial + degrade);
-            }
-            if (initial != 0) {
-                if (originalX - x >= 0)
-                    floodAdd(heatmap, seen, originalX, originalY, x - 1, y, initial, degrade);
-                if (originalX - x <= 0)
-                    floodAdd(heatmap, seen, originalX, originalY, x + 1, y, initial, degrade);
-                if (originalY - y >= 0)
-                    floodAdd(heatmap, seen, originalX, originalY, x, y - 1, initial, degrade);
-                if (originalY - y <= 0)
-                    floodAdd(heatmap, seen, originalX, originalY, x, y + 1, initial, degrade);
-            }
+    /**
+     * @return the names of the influence models, in the order of influenceModels
+     */
+    public static String[] getInfluenceModelNames() {
+        String[] names = new String[influenceModels.length];
+        for (int i = 0; i < influenceModels.length; i++)
+            names[i] = influenceModels[i].getName();
+        return names;
+    }
+
+    /**
+     * @param data           the position to compute influence for, eg a snapshot taken with getData()
+     * @param model          the influence model to use
+     * @param stoneInfluence how far the influence of a stone reaches
+     * @param useGradient    whether or not the heatmap will be drawn with gradients, which need dimmer stones
+     * @return the influence of each point, from 0 (white) to 1 (black). Cached, so it must not be modified
+     */
+    public double[] getInfluenceHeatmap(BoardData data, InfluenceModel model, int stoneInfluence, boolean useGradient) {
+        return getInfluenceHeatmap(data, model, stoneInfluence, useGradient, influenceField);
+    }
+
+    /**
+     * Same as getInfluenceHeatmap(data, model, stoneInfluence, useGradient), but updates the given running sums on a
+     * cache miss. Lets background threads fill the cache without moving the board's own sums away from the position
+     * being shown
+     */
+    public double[] getInfluenceHeatmap(BoardData data, InfluenceModel model, int stoneInfluence, boolean useGradient,
+                                        InfluenceField field) {
+        double[] heatmap = heatmapCache.get(data.zobrist, model, stoneInfluence, useGradient);
+        if (heatmap == null) {
+            heatmap = computeInfluenceHeatmap(data.stones, model, field, stoneInfluence, useGradient);
+            heatmapCache.put(data.zobrist, model, stoneInfluence, useGradient, heatmap);
         }
+        return heatmap;
+    }
+
+    private static double[] computeInfluenceHeatmap(Stone[] stones, InfluenceModel model, InfluenceField field,
+                                                    int stoneInfluence, boolean useGradient) {
+        double[] heatmap = new double[BOARD_SIZE * BOARD_SIZE];
+        Heatmaps.compute(stones, model, field, stoneInfluence, useGradient, heatmap);
+        return heatmap;
     }
 
 }
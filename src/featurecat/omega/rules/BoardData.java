@@ -1,14 +1,21 @@
 package featurecat.omega.rules;
 
+/**
+ * A position. Positions are shared between the history, the UI and worker threads, so neither the fields nor the
+ * arrays they point to may be modified once constructed
+ */
 public class BoardData {
-    public int moveNumber;
-    public int[] lastMove;
-    public int[] moveNumberList;
-    public boolean blackToPlay;
+    public final int moveNumber;
+    public final int[] lastMove;
+    public final int[] moveNumberList;
+    public final boolean blackToPlay;
 
-    public Stone lastMoveColor;
-    public Stone[] stones;
-    public Zobrist zobrist;
+    public final Stone lastMoveColor;
+    public final Stone[] stones;
+    public final Zobrist zobrist;
+
+    // bitboard views of stones, built the first time they are asked for
+    private Bitboard black, white;
 
     public BoardData(Stone[] stones, int[] lastMove, Stone lastMoveColor, boolean blackToPlay, Zobrist zobrist, int moveNumber, int[] moveNumberList) {
         this.moveNumber = moveNumber;
@@ -20,4 +27,29 @@ public class BoardData {
         this.stones = stones;
         this.zobrist = zobrist;
     }
+
+    /**
+     * @return the black stones of this position
+     */
+    public Bitboard getBlack() {
+        if (black == null)
+            black = Bitboard.of(stones, Stone.BLACK);
+        return black;
+    }
+
+    /**
+     * @return the white stones of this position
+     */
+    public Bitboard getWhite() {
+        if (white == null)
+            white = Bitboard.of(stones, Stone.WHITE);
+        return white;
+    }
+
+    /**
+     * @return the empty points of this position
+     */
+    public Bitboard getEmpty() {
+        return getBlack().or(getWhite()).not();
+    }
 }
@@ -1,11 +1,28 @@
 package featurecat.omega.rules;
 
+import java.util.Arrays;
+
 /**
  * Linked list data structure to store board history
+ *
+ * The nodes are also kept in an array, so that any node can be reached by its index without walking the list.
  */
 public class BoardHistoryList {
     private BoardHistoryNode head;
 
+    // every node from the first one to the end of the list, in order, and the index of head among them. Slots below
+    // size are never written again: forgetting nodes copies the array, so that snapshots can keep reading the old one
+    private BoardHistoryNode[] nodes = new BoardHistoryNode[64];
+    private int size;
+    private int headIndex;
+
+    // the position at head, kept so that nodes storing only deltas don't have to be rebuilt on every access
+    private BoardData headData;
+
+    // the index of the first node holding each (zobrist, player to move) pair. A position has occurred before head
+    // exactly when its first index is not after head, so moving head around never has to touch this map
+    private final LongIntHashMap positions = new LongIntHashMap();
+
     /**
      * Initialize a new board history list, whose first node is data
      *
@@ -13,6 +30,10 @@ public class BoardHistoryList {
      */
     public BoardHistoryList(BoardData data) {
         head = new BoardHistoryNode(data);
+        headData = data;
+        headIndex = 0;
+        nodes[size++] = head;
+        addPosition(head, 0);
     }
 
     /**
@@ -21,7 +42,26 @@ public class BoardHistoryList {
      * @param data the data to add
      */
     public void add(BoardData data) {
-        head = head.add(new BoardHistoryNode(data));
+        // forget the overwritten future history
+        if (size > headIndex + 1) {
+            for (int i = size - 1; i > headIndex; i--)
+                removePosition(nodes[i], i);
+            nodes = Arrays.copyOf(nodes, nodes.length);
+            Arrays.fill(nodes, headIndex + 1, size, null);
+            size = headIndex + 1;
+        }
+
+        int keyframeDistance = head.getKeyframeDistance() + 1;
+        if (keyframeDistance >= BoardHistoryNode.KEYFRAME_INTERVAL)
+            head = head.add(new BoardHistoryNode(data));
+        else
+            head = head.add(new BoardHistoryNode(headData, data, keyframeDistance));
+        headData = data;
+        headIndex++;
+        if (size == nodes.length)
+            nodes = Arrays.copyOf(nodes, 2 * size);
+        nodes[size++] = head;
+        addPosition(head, headIndex);
     }
 
     /**
@@ -32,10 +72,13 @@ public class BoardHistoryList {
     public BoardData previous() {
         if (head.previous() == null)
             return null;
-        else
+        else {
             head = head.previous();
+            headIndex--;
+        }
 
-        return head.getData();
+        headData = head.getData();
+        return headData;
     }
 
     /**
@@ -46,10 +89,33 @@ public class BoardHistoryList {
     public BoardData next() {
         if (head.next() == null)
             return null;
-        else
+        else {
             head = head.next();
+            headIndex++;
+        }
 
-        return head.getData();
+        headData = head.getData(headData);
+        return headData;
+    }
+
+    /**
+     * moves the pointer straight to a node, without visiting the nodes in between
+     *
+     * @param index the index of the node, 0 being the first node. Clamped to the nodes that exist
+     * @return the data of the node moved to, null if the pointer was already there
+     */
+    public BoardData seek(int index) {
+        index = Math.max(0, Math.min(size - 1, index));
+        if (index == headIndex)
+            return null;
+
+        if (index == headIndex + 1)
+            return next();
+
+        head = nodes[index];
+        headIndex = index;
+        headData = head.getData();
+        return headData;
     }
 
     /**
@@ -61,69 +127,146 @@ public class BoardHistoryList {
         if (head.next() == null)
             return null;
         else
-            return head.next().getData();
+            return head.next().getData(headData);
     }
 
     /**
      * @return the data of the current node
      */
     public BoardData getData() {
-        return head.getData();
+        return headData;
     }
 
     public Stone[] getStones() {
-        return head.getData().stones;
+        return headData.stones;
     }
 
     public int[] getLastMove() {
-        return head.getData().lastMove;
+        return headData.lastMove;
     }
 
     public Stone getLastMoveColor() {
-        return head.getData().lastMoveColor;
+        return headData.lastMoveColor;
     }
 
     public boolean isBlacksTurn() {
-        return head.getData().blackToPlay;
+        return headData.blackToPlay;
     }
 
     public Zobrist getZobrist() {
-        return head.getData().zobrist.clone();
+        return headData.zobrist.clone();
     }
 
     public int getMoveNumber() {
-        return head.getData().moveNumber;
+        return headData.moveNumber;
     }
 
     public int[] getMoveNumberList() {
-        return head.getData().moveNumberList;
+        return headData.moveNumberList;
     }
 
     public void toStart() {
-        while (previous() != null);
+        seek(0);
     }
 
     public BoardHistoryNode getCurrentHistoryNode() {
         return head;
     }
 
+    /**
+     * @return the index of the current node, 0 being the first node
+     */
+    public int getCurrentIndex() {
+        return headIndex;
+    }
+
+    /**
+     * @param index the index of a node, 0 being the first node -- must be valid
+     * @return the node at that index
+     */
+    public BoardHistoryNode getNode(int index) {
+        return nodes[index];
+    }
+
+    /**
+     * @return the number of nodes, including the ones after head
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the nodes as they are now, and head. Later changes to this list don't show in it
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(nodes, size, headIndex);
+    }
+
     /**
      * @param data the board position to check against superko
      * @return whether or not the given position violates the superko rule at the head's state
      */
     public boolean violatesSuperko(BoardData data) {
-        BoardHistoryNode head = this.head;
+        // if two zobrist hashes are equal, and it's the same player to move, they are the same position
+        int firstIndex = positions.get(data.zobrist.positionKey(data.blackToPlay), -1);
+        return firstIndex >= 0 && firstIndex <= headIndex;
+    }
+
+    private void addPosition(BoardHistoryNode node, int index) {
+        long key = node.getZobrist().positionKey(node.isBlacksTurn());
+        if (!positions.containsKey(key))
+            positions.put(key, index);
+    }
 
-        // check to see if this position has occurred before
-        while (head.previous() != null) {
-            // if two zobrist hashes are equal, and it's the same player to coordinate, they are the same position
-            if (data.zobrist.equals(head.getData().zobrist) && data.blackToPlay == head.getData().blackToPlay)
-                return true;
+    private void removePosition(BoardHistoryNode node, int index) {
+        // nodes are only ever removed from the end, so an earlier index for this key stays valid
+        long key = node.getZobrist().positionKey(node.isBlacksTurn());
+        if (positions.get(key, -1) == index)
+            positions.remove(key);
+    }
 
-            head = head.previous();
+    /**
+     * The nodes of a history list at one moment. It never changes, so it can be read from any thread without locking,
+     * while the list itself moves on
+     */
+    public static class Snapshot {
+        private final BoardHistoryNode[] nodes;
+        private final int size;
+        private final int headIndex;
+
+        private Snapshot(BoardHistoryNode[] nodes, int size, int headIndex) {
+            this.nodes = nodes;
+            this.size = size;
+            this.headIndex = headIndex;
         }
 
-        // no position matched this position, so it's valid
-        return false;
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the index of head when the snapshot was taken
+         */
+        public int getCurrentIndex() {
+            return headIndex;
+        }
+
+        /**
+         * Rebuilds a position from the nearest keyframe before it. Only reads the nodes in the snapshot, never their
+         * links, which the list changes
+         *
+         * @param index the index of a node, 0 being the first node -- must be valid
+         * @return the position at the node
+         */
+        public BoardData getData(int index) {
+            int start = index;
+            while (!nodes[start].isKeyframe())
+                start--;
+
+            BoardData data = nodes[start].getData();
+            while (start < index)
+                data = nodes[++start].getData(data);
+            return data;
+        }
     }
 }
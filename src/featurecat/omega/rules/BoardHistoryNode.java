@@ -2,24 +2,86 @@ package featurecat.omega.rules;
 
 /**
  * Node structure for a special doubly linked list
+ *
+ * Only every KEYFRAME_INTERVAL-th node keeps a full copy of the board. The others store what changed since the
+ * previous node, and their positions are rebuilt on demand from the nearest keyframe before them.
  */
 public class BoardHistoryNode {
+    public static final int KEYFRAME_INTERVAL = 32;
+
+    private static final long[] NO_CHANGES = new long[0];
+    private static final Stone[] STONES = Stone.values();
+
     private BoardHistoryNode previous;
     private BoardHistoryNode next;
 
-    private BoardData data;
+    // full copy of the board, null unless this node is a keyframe
+    private final BoardData keyframe;
+    // number of nodes since the last keyframe, 0 for keyframes
+    private final int keyframeDistance;
+
+    // what changed since the previous node. Each change packs the index of a point (low 16 bits), its new stone
+    // (next 16 bits) and its new move number (high 32 bits)
+    private final long[] changes;
+    private final int[] lastMove;
+    private final Stone lastMoveColor;
+    private final boolean blackToPlay;
+    private final Zobrist zobrist;
+    private final int moveNumber;
 
     public boolean hasNext() {
         return next != null;
     }
 
     /**
-     * Initializes a new list node
+     * Initializes a new list node, storing a full copy of the board
      */
     public BoardHistoryNode(BoardData data) {
         previous = null;
         next = null;
-        this.data = data;
+
+        keyframe = data;
+        keyframeDistance = 0;
+
+        changes = NO_CHANGES;
+        lastMove = data.lastMove;
+        lastMoveColor = data.lastMoveColor;
+        blackToPlay = data.blackToPlay;
+        zobrist = data.zobrist;
+        moveNumber = data.moveNumber;
+    }
+
+    /**
+     * Initializes a new list node, storing only the difference between two positions
+     *
+     * @param previousData     the position at the node this one will follow
+     * @param data             the position of this node
+     * @param keyframeDistance the number of nodes since the last keyframe, including this one
+     */
+    BoardHistoryNode(BoardData previousData, BoardData data, int keyframeDistance) {
+        previous = null;
+        next = null;
+
+        keyframe = null;
+        this.keyframeDistance = keyframeDistance;
+
+        int changeCount = 0;
+        for (int i = 0; i < data.stones.length; i++) {
+            if (data.stones[i] != previousData.stones[i] || data.moveNumberList[i] != previousData.moveNumberList[i])
+                changeCount++;
+        }
+        changes = changeCount == 0 ? NO_CHANGES : new long[changeCount];
+        changeCount = 0;
+        for (int i = 0; i < data.stones.length; i++) {
+            if (data.stones[i] != previousData.stones[i] || data.moveNumberList[i] != previousData.moveNumberList[i])
+                changes[changeCount++] = i | (long) data.stones[i].ordinal() << 16 | (long) data.moveNumberList[i] << 32;
+        }
+
+        lastMove = data.lastMove;
+        lastMoveColor = data.lastMoveColor;
+        blackToPlay = data.blackToPlay;
+        zobrist = data.zobrist;
+        moveNumber = data.moveNumber;
     }
 
     /**
@@ -36,12 +98,77 @@ public class BoardHistoryNode {
     }
 
     /**
+     * Rebuilds the data stored on this node from the nearest keyframe. Prefer getData(BoardData) when the position
+     * of the previous node is already known.
+     *
      * @return data stored on this node
      */
     public BoardData getData() {
+        if (keyframe != null)
+            return keyframe;
+
+        BoardHistoryNode start = this;
+        while (start.keyframe == null)
+            start = start.previous;
+
+        BoardData data = start.keyframe;
+        while (start != this) {
+            start = start.next;
+            data = start.getData(data);
+        }
         return data;
     }
 
+    /**
+     * @param previousData the data stored on the previous node
+     * @return data stored on this node
+     */
+    public BoardData getData(BoardData previousData) {
+        if (keyframe != null)
+            return keyframe;
+
+        Stone[] stones = previousData.stones.clone();
+        int[] moveNumberList = previousData.moveNumberList.clone();
+        for (long change : changes) {
+            int index = (int) (change & 0xFFFF);
+            stones[index] = STONES[(int) (change >>> 16 & 0xFFFF)];
+            moveNumberList[index] = (int) (change >>> 32);
+        }
+
+        return new BoardData(stones, lastMove, lastMoveColor, blackToPlay, zobrist, moveNumber, moveNumberList);
+    }
+
+    /**
+     * @return whether or not this node keeps a full copy of the board
+     */
+    public boolean isKeyframe() {
+        return keyframe != null;
+    }
+
+    int getKeyframeDistance() {
+        return keyframeDistance;
+    }
+
+    public int[] getLastMove() {
+        return lastMove;
+    }
+
+    public Stone getLastMoveColor() {
+        return lastMoveColor;
+    }
+
+    public boolean isBlacksTurn() {
+        return blackToPlay;
+    }
+
+    public Zobrist getZobrist() {
+        return zobrist;
+    }
+
+    public int getMoveNumber() {
+        return moveNumber;
+    }
+
     public BoardHistoryNode previous() {
         return previous;
     }
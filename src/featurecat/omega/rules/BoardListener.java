@@ -0,0 +1,14 @@
+package featurecat.omega.rules;
+
+/**
+ * Gets notified whenever the position of a board changes. Lets the rules run without a window, and lets the UI
+ * decide how to react to changes.
+ */
+public interface BoardListener {
+    /**
+     * Called after every change to the board, on the thread that made the change
+     *
+     * @param board the board that changed
+     */
+    void boardChanged(Board board);
+}
@@ -0,0 +1,94 @@
+package featurecat.omega.rules;
+
+/**
+ * Bouzy's mathematical morphology influence: stones start with a large value, which spreads to neighbouring points
+ * with a number of dilations, then gets worn away at the borders with a number of erosions. Every pass costs the
+ * same on an empty or a full board, so the cost only grows with stoneInfluence, not with the number of stones.
+ *
+ * See Bouzy, "Mathematical morphology applied to computer go" (2003). stoneInfluence is used as the number of
+ * dilations, with half as many erosions.
+ */
+public class BouzyInfluenceModel implements InfluenceModel {
+    private static final int SIZE = Board.BOARD_SIZE * Board.BOARD_SIZE;
+    private static final int STONE_VALUE = 128;
+
+    // scratch space for the values before and after each pass. The model is shared by every thread making heatmaps,
+    // so each thread has its own
+    private static final ThreadLocal<int[][]> scratch = ThreadLocal.withInitial(() -> new int[2][SIZE]);
+
+    @Override
+    public String getName() {
+        return "Bouzy";
+    }
+
+    @Override
+    public void computeInfluence(Stone[] stones, int stoneInfluence, double[] heatmap) {
+        int[][] arrays = scratch.get();
+        int[] values = arrays[0];
+        int[] next = arrays[1];
+        for (int i = 0; i < SIZE; i++)
+            values[i] = stones[i] == Stone.BLACK ? STONE_VALUE : stones[i] == Stone.WHITE ? -STONE_VALUE : 0;
+
+        for (int i = 0; i < stoneInfluence; i++) {
+            dilate(values, next);
+            int[] temp = values;
+            values = next;
+            next = temp;
+        }
+        for (int i = 0; i < stoneInfluence / 2; i++) {
+            erode(values, next);
+            int[] temp = values;
+            values = next;
+            next = temp;
+        }
+
+        // a point grows by at most 4 per dilation, so scale by that. Stones start far above it and come out at 1
+        double scale = 4.0 * stoneInfluence;
+        for (int i = 0; i < SIZE; i++)
+            heatmap[i] = Math.max(-1, Math.min(1, values[i] / scale));
+    }
+
+    /**
+     * Points not touching the other color grow by the number of neighbours of their own color
+     */
+    private static void dilate(int[] values, int[] result) {
+        for (int i = 0; i < SIZE; i++) {
+            int value = values[i];
+            int positive = 0, negative = 0;
+            for (int neighbour : ChainTracker.NEIGHBOURS[i]) {
+                if (values[neighbour] > 0)
+                    positive++;
+                else if (values[neighbour] < 0)
+                    negative++;
+            }
+
+            if (value >= 0 && negative == 0)
+                value += positive;
+            if (value <= 0 && positive == 0)
+                value -= negative;
+            result[i] = value;
+        }
+    }
+
+    /**
+     * Points shrink towards zero by the number of neighbours not of their own color, without changing sign
+     */
+    private static void erode(int[] values, int[] result) {
+        for (int i = 0; i < SIZE; i++) {
+            int value = values[i];
+            int notPositive = 0, notNegative = 0;
+            for (int neighbour : ChainTracker.NEIGHBOURS[i]) {
+                if (values[neighbour] <= 0)
+                    notPositive++;
+                if (values[neighbour] >= 0)
+                    notNegative++;
+            }
+
+            if (value > 0)
+                value = Math.max(0, value - notPositive);
+            else if (value < 0)
+                value = Math.min(0, value + notNegative);
+            result[i] = value;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package featurecat.omega.rules;
+
+/**
+ * Keeps track of the chains on the board and their liberties, so that captures and suicide can be detected
+ * without flood filling the board on every move.
+ *
+ * Liberties are counted as pseudo-liberties: every (stone, empty neighbour) pair counts once, so an empty point
+ * touching a chain in two places is counted twice. A chain has no liberties exactly when its pseudo-liberty count
+ * is zero, which is all capture detection needs, and the count can be updated in constant time per neighbour.
+ */
+public class ChainTracker {
+    private static final int NONE = -1;
+    private static final int SIZE = Board.BOARD_SIZE * Board.BOARD_SIZE;
+
+    /**
+     * the indices of the up to four neighbours of every point
+     */
+    static final int[][] NEIGHBOURS = new int[SIZE][];
+
+    static {
+        for (int x = 0; x < Board.BOARD_SIZE; x++) {
+            for (int y = 0; y < Board.BOARD_SIZE; y++) {
+                int[] candidates = new int[4];
+                int count = 0;
+                if (Board.isValid(x + 1, y)) candidates[count++] = Board.getIndex(x + 1, y);
+                if (Board.isValid(x, y + 1)) candidates[count++] = Board.getIndex(x, y + 1);
+                if (Board.isValid(x - 1, y)) candidates[count++] = Board.getIndex(x - 1, y);
+                if (Board.isValid(x, y - 1)) candidates[count++] = Board.getIndex(x, y - 1);
+
+                int[] neighbours = new int[count];
+                System.arraycopy(candidates, 0, neighbours, 0, count);
+                NEIGHBOURS[Board.getIndex(x, y)] = neighbours;
+            }
+        }
+    }
+
+    private final int[] chain = new int[SIZE];     // id of the chain each stone belongs to, NONE for empty points
+    private final int[] nextStone = new int[SIZE]; // circular list linking together the stones of each chain
+    private final int[] chainSize = new int[SIZE]; // number of stones, indexed by chain id
+    private final int[] liberties = new int[SIZE]; // pseudo-liberties, indexed by chain id
+
+    // the position this tracker mirrors, null if it has to be rebuilt before use
+    private Stone[] stones;
+
+    /**
+     * @param stones a stones array
+     * @return whether or not this tracker currently mirrors exactly this array
+     */
+    public boolean isTracking(Stone[] stones) {
+        return this.stones != null && this.stones == stones;
+    }
+
+    /**
+     * Forget the tracked position. The next caller has to reset() before playing.
+     */
+    public void invalidate() {
+        stones = null;
+    }
+
+    /**
+     * Rebuilds all chains and liberty counts for a position. Runs in linear time without recursion.
+     *
+     * @param stones the position to track. Must not be modified afterwards except through play()
+     */
+    public void reset(Stone[] stones) {
+        int[] stack = new int[SIZE];
+
+        for (int i = 0; i < SIZE; i++)
+            chain[i] = NONE;
+
+        for (int i = 0; i < SIZE; i++) {
+            if (stones[i] == Stone.EMPTY || chain[i] != NONE)
+                continue;
+
+            // label every stone connected to i with the chain id i, linking them together as we go
+            Stone color = stones[i];
+            chain[i] = i;
+            nextStone[i] = i;
+            chainSize[i] = 1;
+            liberties[i] = 0;
+            int top = 0;
+            stack[top++] = i;
+            while (top > 0) {
+                int stone = stack[--top];
+                for (int neighbour : NEIGHBOURS[stone]) {
+                    if (stones[neighbour] == Stone.EMPTY) {
+                        liberties[i]++;
+                    } else if (stones[neighbour] == color && chain[neighbour] == NONE) {
+                        chain[neighbour] = i;
+                        nextStone[neighbour] = nextStone[i];
+                        nextStone[i] = neighbour;
+                        chainSize[i]++;
+                        stack[top++] = neighbour;
+                    }
+                }
+            }
+        }
+
+        this.stones = stones;
+    }
+
+    /**
+     * Places a stone, removing any enemy chains left without liberties.
+     *
+     * @param x        x coordinate -- must be valid and empty
+     * @param y        y coordinate -- must be valid and empty
+     * @param color    the color of the stone to place
+     * @param stones   a copy of the tracked position. It is modified in place and becomes the tracked position
+     * @param zobrist  the zobrist object to modify
+     * @param captured receives the indices of the captured stones
+     * @return the number of captured stones, or -1 if the move is suicidal. In that case the tracker is invalidated
+     * and stones is left in an unspecified state
+     */
+    public int play(int x, int y, Stone color, Stone[] stones, Zobrist zobrist, int[] captured) {
+        int index = Board.getIndex(x, y);
+        Stone enemy = color.opposite();
+
+        stones[index] = color;
+        zobrist.toggleStone(x, y, color);
+
+        chain[index] = index;
+        nextStone[index] = index;
+        chainSize[index] = 1;
+        liberties[index] = 0;
+
+        // the new stone takes a liberty away from every chain it touches, once for every side it touches it on
+        for (int neighbour : NEIGHBOURS[index]) {
+            if (stones[neighbour] == Stone.EMPTY)
+                liberties[index]++;
+            else
+                liberties[chain[neighbour]]--;
+        }
+
+        // connect to friendly chains
+        for (int neighbour : NEIGHBOURS[index]) {
+            if (stones[neighbour] == color && chain[neighbour] != chain[index])
+                merge(chain[neighbour], chain[index]);
+        }
+
+        // remove enemy stones
+        int capturedCount = 0;
+        for (int neighbour : NEIGHBOURS[index]) {
+            if (stones[neighbour] == enemy && liberties[chain[neighbour]] == 0)
+                capturedCount = removeChain(chain[neighbour], color, stones, zobrist, captured, capturedCount);
+        }
+
+        // check to see if the player made a suicidal move
+        if (liberties[chain[index]] == 0) {
+            invalidate();
+            return -1;
+        }
+
+        this.stones = stones;
+        return capturedCount;
+    }
+
+    /**
+     * Joins two chains, relabelling the smaller one
+     */
+    private void merge(int first, int second) {
+        int big = chainSize[first] >= chainSize[second] ? first : second;
+        int small = big == first ? second : first;
+
+        int stone = small;
+        do {
+            chain[stone] = big;
+            stone = nextStone[stone];
+        } while (stone != small);
+
+        // splice the two circular lists together
+        int temp = nextStone[big];
+        nextStone[big] = nextStone[small];
+        nextStone[small] = temp;
+
+        chainSize[big] += chainSize[small];
+        liberties[big] += liberties[small];
+    }
+
+    /**
+     * Removes every stone of a chain and gives the liberties back to the surrounding enemy chains
+     *
+     * @return the new number of captured stones
+     */
+    private int removeChain(int id, Stone capturer, Stone[] stones, Zobrist zobrist, int[] captured, int capturedCount) {
+        int stone = id;
+        do {
+            int next = nextStone[stone];
+            zobrist.toggleStone(stone / Board.BOARD_SIZE, stone % Board.BOARD_SIZE, stones[stone]);
+            stones[stone] = Stone.EMPTY;
+            chain[stone] = NONE;
+            captured[capturedCount++] = stone;
+
+            // only the capturer's chains can touch a chain, other than the chain itself
+            for (int neighbour : NEIGHBOURS[stone]) {
+                if (stones[neighbour] == capturer)
+                    liberties[chain[neighbour]]++;
+            }
+            stone = next;
+        } while (stone != id);
+
+        return capturedCount;
+    }
+}
@@ -0,0 +1,69 @@
+package featurecat.omega.rules;
+
+/**
+ * Influence from the distance to the nearest stone of each color. One breadth first search from all black stones
+ * at once and one from all white stones finds every distance, walking around enemy stones, so the cost only
+ * depends on the size of the board.
+ *
+ * A point at distance d from the nearest black stone gets 1 - d / stoneInfluence of black influence, and the same
+ * for white. Enemy stones receive influence but don't pass it on.
+ */
+public class DistanceInfluenceModel implements InfluenceModel {
+    private static final int SIZE = Board.BOARD_SIZE * Board.BOARD_SIZE;
+
+    // scratch space: the distances to black and to white, and the search queue. The model is shared by every
+    // thread making heatmaps, so each thread has its own
+    private static final ThreadLocal<int[][]> scratch = ThreadLocal.withInitial(() -> new int[3][SIZE]);
+
+    @Override
+    public String getName() {
+        return "Distance";
+    }
+
+    @Override
+    public void computeInfluence(Stone[] stones, int stoneInfluence, double[] heatmap) {
+        int[][] arrays = scratch.get();
+        int[] blackDistance = arrays[0];
+        int[] whiteDistance = arrays[1];
+        int[] queue = arrays[2];
+        findDistances(stones, Stone.BLACK, blackDistance, queue);
+        findDistances(stones, Stone.WHITE, whiteDistance, queue);
+
+        for (int i = 0; i < SIZE; i++)
+            heatmap[i] = getStrength(blackDistance[i], stoneInfluence) - getStrength(whiteDistance[i], stoneInfluence);
+    }
+
+    /**
+     * Multi source breadth first search
+     *
+     * @param distance receives the distance of every point to the nearest stone of color, or -1 if it can't be reached
+     */
+    private static void findDistances(Stone[] stones, Stone color, int[] distance, int[] queue) {
+        int head = 0, tail = 0;
+        for (int i = 0; i < SIZE; i++) {
+            distance[i] = -1;
+            if (stones[i] == color) {
+                distance[i] = 0;
+                queue[tail++] = i;
+            }
+        }
+
+        Stone enemy = color.opposite();
+        while (head < tail) {
+            int point = queue[head++];
+            if (stones[point] == enemy)
+                continue;
+
+            for (int neighbour : ChainTracker.NEIGHBOURS[point]) {
+                if (distance[neighbour] < 0) {
+                    distance[neighbour] = distance[point] + 1;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+    }
+
+    private static double getStrength(int distance, int stoneInfluence) {
+        return distance < 0 ? 0 : Math.max(0, 1 - (double) distance / stoneInfluence);
+    }
+}
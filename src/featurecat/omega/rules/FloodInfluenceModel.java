@@ -0,0 +1,25 @@
+package featurecat.omega.rules;
+
+import java.util.Arrays;
+
+/**
+ * The original influence model. Each stone floods outwards, losing 1 / stoneInfluence per step and stopping at
+ * enemy stones, and the floods of all stones are added up. Costs stones * stoneInfluence^2.
+ *
+ * The influence is a sum over stones, which is what lets InfluenceField update it incrementally.
+ */
+public class FloodInfluenceModel implements InfluenceModel {
+    @Override
+    public String getName() {
+        return "Flood";
+    }
+
+    @Override
+    public void computeInfluence(Stone[] stones, int stoneInfluence, double[] heatmap) {
+        Arrays.fill(heatmap, 0);
+        for (int i = 0; i < stones.length; i++) {
+            if (stones[i] != Stone.EMPTY)
+                InfluenceField.addStone(stones, i, stoneInfluence, heatmap, 1);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package featurecat.omega.rules;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A game as it is written in a SGF file: a tree of nodes, each holding its moves, setup stones and other properties
+ * in the order they were written. Variations are kept, the first child of a node being the main line.
+ *
+ * Nothing is played while a game tree is built, so building one only costs the parsing. Board positions are made
+ * from it later, by Board.load, when they are visited. The nodes are stored in arrays indexed by node number, which
+ * keeps a tree compact even for long games.
+ */
+public class GameTree {
+    public static final int ROOT = 0;
+    public static final int NONE = -1;
+
+    // points of moves and setup stones that are a pass, or that are not on the board
+    public static final int PASS = -1;
+    public static final int OFF_BOARD = -2;
+
+    // an action is kind << KIND_SHIFT | color << COLOR_SHIFT | (point - OFF_BOARD)
+    static final int MOVE = 0, SETUP = 1, CLEAR = 2;
+    private static final int KIND_SHIFT = 11, COLOR_SHIFT = 10, POINT_MASK = (1 << COLOR_SHIFT) - 1;
+
+    private int size;
+    private int[] parent = new int[64];
+    private int[] firstChild = new int[64];
+    private int[] lastChild = new int[64];
+    private int[] nextSibling = new int[64];
+
+    // the actions of node i are actions[actionStart[i]] up to the actions of node i + 1. Actions can only be added
+    // to the newest node, so they stay in order
+    private int[] actionStart = new int[64];
+    private int[] actions = new int[256];
+    private int actionCount;
+
+    // the other properties of each node, null for nodes without any
+    private Map<String, String>[] properties = newPropertiesArray(64);
+
+    /**
+     * Makes a tree holding only an empty root node
+     */
+    public GameTree() {
+        addNode(NONE);
+    }
+
+    /**
+     * Adds a node as the last child of parent
+     *
+     * @param parent the parent node, or NONE for the root
+     * @return the new node
+     */
+    public int addNode(int parent) {
+        int node = newNode(parent);
+        if (parent != NONE) {
+            if (firstChild[parent] == NONE)
+                firstChild[parent] = node;
+            else
+                nextSibling[lastChild[parent]] = node;
+            lastChild[parent] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Adds a node as the first child of parent, making it the new main line
+     *
+     * @return the new node
+     */
+    public int addFirstNode(int parent) {
+        int node = newNode(parent);
+        nextSibling[node] = firstChild[parent];
+        firstChild[parent] = node;
+        if (lastChild[parent] == NONE)
+            lastChild[parent] = node;
+        return node;
+    }
+
+    /**
+     * Adds a move to the newest node
+     *
+     * @param point the array index of the point played, PASS or OFF_BOARD
+     */
+    public void addMove(int node, Stone color, int point) {
+        addAction(node, MOVE, color, point);
+    }
+
+    /**
+     * Adds a setup stone to the newest node, eg a handicap stone
+     *
+     * @param point the array index of the point, PASS or OFF_BOARD
+     */
+    public void addSetup(int node, Stone color, int point) {
+        addAction(node, SETUP, color, point);
+    }
+
+    /**
+     * Adds a point to clear to the newest node
+     */
+    public void addClear(int node, int point) {
+        addAction(node, CLEAR, Stone.EMPTY, point);
+    }
+
+    /**
+     * @param properties the node's other properties, eg comments and game info. Kept as they are
+     */
+    public void setProperties(int node, Map<String, String> properties) {
+        this.properties[node] = properties;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the parent of a node, or NONE for the root
+     */
+    public int getParent(int node) {
+        return parent[node];
+    }
+
+    /**
+     * @return the main line child of a node, or NONE if it has no children
+     */
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * @return the next variation after a node, or NONE if it is the last one
+     */
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     * @return whether or not a node is one of several variations
+     */
+    public boolean hasVariations(int node) {
+        int parent = this.parent[node];
+        return parent != NONE && firstChild[parent] != lastChild[parent];
+    }
+
+    /**
+     * @return the properties of a node other than moves and setup stones. Must not be modified
+     */
+    public Map<String, String> getProperties(int node) {
+        return properties[node] == null ? Collections.emptyMap() : properties[node];
+    }
+
+    /**
+     * @return the value of a property of a node, or null if the node doesn't have it
+     */
+    public String getProperty(int node, String identifier) {
+        return properties[node] == null ? null : properties[node].get(identifier);
+    }
+
+    /**
+     * @return the number of nodes of the main line, including the root
+     */
+    public int getMainLineLength() {
+        int length = 0;
+        for (int node = ROOT; node != NONE; node = firstChild[node])
+            length++;
+        return length;
+    }
+
+    int getActionStart(int node) {
+        return actionStart[node];
+    }
+
+    int getActionEnd(int node) {
+        return node + 1 < size ? actionStart[node + 1] : actionCount;
+    }
+
+    static int getKind(int action) {
+        return action >>> KIND_SHIFT;
+    }
+
+    static Stone getColor(int action) {
+        return (action >>> COLOR_SHIFT & 1) == 0 ? Stone.BLACK : Stone.WHITE;
+    }
+
+    /**
+     * @return the array index of the action's point, PASS or OFF_BOARD
+     */
+    static int getPoint(int action) {
+        return (action & POINT_MASK) + OFF_BOARD;
+    }
+
+    int getAction(int index) {
+        return actions[index];
+    }
+
+    private int newNode(int parent) {
+        if (size == this.parent.length) {
+            int capacity = 2 * size;
+            this.parent = Arrays.copyOf(this.parent, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            actionStart = Arrays.copyOf(actionStart, capacity);
+            properties = Arrays.copyOf(properties, capacity);
+        }
+
+        int node = size++;
+        this.parent[node] = parent;
+        firstChild[node] = NONE;
+        lastChild[node] = NONE;
+        nextSibling[node] = NONE;
+        actionStart[node] = actionCount;
+        return node;
+    }
+
+    private void addAction(int node, int kind, Stone color, int point) {
+        if (node != size - 1)
+            throw new IllegalStateException("Actions can only be added to the newest node");
+        if (point < OFF_BOARD || point >= Board.BOARD_SIZE * Board.BOARD_SIZE)
+            point = OFF_BOARD;
+
+        if (actionCount == actions.length)
+            actions = Arrays.copyOf(actions, 2 * actionCount);
+        actions[actionCount++] = kind << KIND_SHIFT | (color == Stone.WHITE ? 1 : 0) << COLOR_SHIFT | (point - OFF_BOARD);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Map<String, String>[] newPropertiesArray(int length) {
+        return (Map<String, String>[]) new Map[length];
+    }
+}
@@ -0,0 +1,86 @@
+package featurecat.omega.rules;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the influence heatmaps of recently shown positions, so that repainting or going back and forth through
+ * a game doesn't recompute them. The least recently used heatmap is dropped once the cache is full. Thread safe.
+ */
+public class HeatmapCache {
+    private final Map<Key, double[]> heatmaps;
+
+    // looked up with instead of a new key, so that a hit allocates nothing. Only used while holding the lock
+    private final Key probe = new Key(null, null, 0, false);
+
+    /**
+     * @param capacity the maximum number of heatmaps to keep
+     */
+    public HeatmapCache(int capacity) {
+        heatmaps = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the cached heatmap, or null if there is none. Must not be modified
+     */
+    public synchronized double[] get(Zobrist zobrist, InfluenceModel model, int stoneInfluence, boolean useGradient) {
+        probe.set(zobrist, model, stoneInfluence, useGradient);
+        double[] heatmap = heatmaps.get(probe);
+        probe.set(null, null, 0, false);
+        return heatmap;
+    }
+
+    /**
+     * @param heatmap the heatmap to remember. Must not be modified afterwards
+     */
+    public synchronized void put(Zobrist zobrist, InfluenceModel model, int stoneInfluence, boolean useGradient, double[] heatmap) {
+        heatmaps.put(new Key(zobrist, model, stoneInfluence, useGradient), heatmap);
+    }
+
+    public synchronized void clear() {
+        heatmaps.clear();
+    }
+
+    private static class Key {
+        private Zobrist zobrist;
+        private InfluenceModel model;
+        private int stoneInfluence;
+        private boolean useGradient;
+
+        private Key(Zobrist zobrist, InfluenceModel model, int stoneInfluence, boolean useGradient) {
+            set(zobrist, model, stoneInfluence, useGradient);
+        }
+
+        /**
+         * Only for the probe key. Keys in the map must never change
+         */
+        private void set(Zobrist zobrist, InfluenceModel model, int stoneInfluence, boolean useGradient) {
+            this.zobrist = zobrist;
+            this.model = model;
+            this.stoneInfluence = stoneInfluence;
+            this.useGradient = useGradient;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+
+            Key key = (Key) o;
+            return zobrist.equals(key.zobrist) && model == key.model && stoneInfluence == key.stoneInfluence && useGradient == key.useGradient;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = zobrist.hashCode();
+            hash = 31 * hash + System.identityHashCode(model);
+            hash = 31 * hash + stoneInfluence;
+            return 31 * hash + (useGradient ? 1 : 0);
+        }
+    }
+}
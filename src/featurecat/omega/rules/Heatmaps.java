@@ -0,0 +1,62 @@
+package featurecat.omega.rules;
+
+/**
+ * The passes that turn raw influence into a heatmap ready to be drawn. Every pass works in place on a caller's
+ * buffer, so making a heatmap allocates nothing but the heatmap itself.
+ *
+ * normalize only touches primitive arrays, with no calls or branches inside its loop, so the JIT compiles it to SIMD
+ * instructions on its own.
+ */
+public class Heatmaps {
+    private static final int SIZE = Board.BOARD_SIZE * Board.BOARD_SIZE;
+
+    /**
+     * Computes the heatmap of a position
+     *
+     * @param stones         the position
+     * @param model          the influence model to use
+     * @param field          running sums to update instead of recomputing flood influence, or null
+     * @param stoneInfluence how far the influence of a stone reaches
+     * @param useGradient    whether or not the heatmap will be drawn with gradients, which need dimmer stones
+     * @param heatmap        receives the influence of each point, from 0 (white) to 1 (black)
+     */
+    public static void compute(Stone[] stones, InfluenceModel model, InfluenceField field, int stoneInfluence,
+                               boolean useGradient, double[] heatmap) {
+        // flood influence is a sum over stones, so it can be updated from the last position instead of recomputed
+        if (field != null && model instanceof FloodInfluenceModel)
+            field.update(stones, stoneInfluence, heatmap);
+        else
+            model.computeInfluence(stones, stoneInfluence, heatmap);
+
+        if (useGradient)
+            dimStones(stones, heatmap);
+        normalize(heatmap, heatmap);
+    }
+
+    /**
+     * Keeps stones from being drawn too bright, which gradients need: black stones are clamped to [0, 0.5] and white
+     * stones to [-0.5, 0]
+     *
+     * @param stones  the position
+     * @param heatmap raw influence, clamped in place
+     */
+    public static void dimStones(Stone[] stones, double[] heatmap) {
+        for (int i = 0; i < SIZE; i++) {
+            if (stones[i].isBlack())
+                heatmap[i] = Math.max(0, Math.min(heatmap[i], 0.5));
+            else if (stones[i].isWhite())
+                heatmap[i] = Math.min(0, Math.max(heatmap[i], -0.5));
+        }
+    }
+
+    /**
+     * Maps raw influence from [-1, 1] to [0, 1], clamping anything outside of that
+     *
+     * @param raw    raw influence, positive for black
+     * @param result receives the normalized heatmap, 0 for white and 1 for black. May be raw itself
+     */
+    public static void normalize(double[] raw, double[] result) {
+        for (int i = 0; i < SIZE; i++)
+            result[i] = Math.max(0, Math.min(1, (raw[i] + 1) * 0.5));
+    }
+}
@@ -0,0 +1,223 @@
+package featurecat.omega.rules;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the raw influence of a position as a running sum of the influence of each stone, and updates it when the
+ * position changes instead of recomputing it.
+ *
+ * A stone's influence spreads away from it, losing 1 / stoneInfluence per step, and stops at enemy stones. So when
+ * a point changes, the only stones whose influence changes are the stone on that point and the nearby stones that
+ * the point does or did block. Only those get subtracted and added again.
+ */
+public class InfluenceField {
+    private static final int SIZE = Board.BOARD_SIZE * Board.BOARD_SIZE;
+
+    // above this many changed points, recomputing everything is as cheap as updating
+    private static final int MAX_CHANGES = 16;
+    // recompute everything once in a while, so rounding errors of the running sums don't add up
+    private static final int MAX_UPDATES = 64;
+
+    private final double[] influence = new double[SIZE];
+    private Stone[] stones;
+    private int stoneInfluence;
+    private int updates;
+
+    // strengths for every stone influence the UI offers, so that adding a stone doesn't allocate
+    private static final double[][] STRENGTHS = new double[21][];
+
+    static {
+        for (int i = 1; i < STRENGTHS.length; i++)
+            STRENGTHS[i] = computeStrengths(i);
+    }
+
+    // scratch space
+    private final int[] changed = new int[SIZE];
+    private final boolean[] affected = new boolean[SIZE];
+
+    /**
+     * Brings the running sums up to date with a position
+     *
+     * @param stones         the position. Must not be modified afterwards
+     * @param stoneInfluence how far the influence of a stone reaches
+     * @param heatmap        receives the raw influence of each point: positive for black, negative for white
+     */
+    public synchronized void update(Stone[] stones, int stoneInfluence, double[] heatmap) {
+        updateSums(stones, stoneInfluence);
+        System.arraycopy(influence, 0, heatmap, 0, SIZE);
+    }
+
+    private void updateSums(Stone[] stones, int stoneInfluence) {
+        if (this.stones == null || this.stoneInfluence != stoneInfluence || updates >= MAX_UPDATES) {
+            recompute(stones, stoneInfluence);
+            return;
+        }
+        if (this.stones == stones)
+            return;
+
+        int changedCount = 0;
+        for (int i = 0; i < SIZE && changedCount <= MAX_CHANGES; i++) {
+            if (stones[i] != this.stones[i])
+                changed[changedCount++] = i;
+        }
+        if (changedCount > MAX_CHANGES) {
+            recompute(stones, stoneInfluence);
+            return;
+        }
+
+        // a changed point only matters to stones close enough to reach it, and only to stones it blocks or blocked
+        int reach = getReach(stoneInfluence);
+        for (int i = 0; i < SIZE; i++) {
+            affected[i] = false;
+            if (this.stones[i] == Stone.EMPTY && stones[i] == Stone.EMPTY)
+                continue;
+
+            for (int c = 0; c < changedCount; c++) {
+                int point = changed[c];
+                if (point == i || getDistance(point, i) <= reach &&
+                        (isEnemy(this.stones[point], this.stones[i]) || isEnemy(stones[point], this.stones[i]) ||
+                                isEnemy(this.stones[point], stones[i]) || isEnemy(stones[point], stones[i]))) {
+                    affected[i] = true;
+                    break;
+                }
+            }
+        }
+
+        for (int i = 0; i < SIZE; i++) {
+            if (!affected[i])
+                continue;
+            if (this.stones[i] != Stone.EMPTY)
+                addStone(this.stones, i, stoneInfluence, influence, -1);
+            if (stones[i] != Stone.EMPTY)
+                addStone(stones, i, stoneInfluence, influence, 1);
+        }
+
+        this.stones = stones;
+        updates++;
+    }
+
+    private void recompute(Stone[] stones, int stoneInfluence) {
+        Arrays.fill(influence, 0);
+        for (int i = 0; i < SIZE; i++) {
+            if (stones[i] != Stone.EMPTY)
+                addStone(stones, i, stoneInfluence, influence, 1);
+        }
+
+        this.stones = stones;
+        this.stoneInfluence = stoneInfluence;
+        updates = 0;
+    }
+
+    /**
+     * Adds the influence of one stone to a heatmap. Influence spreads from the stone, only ever moving further away
+     * from it, and loses 1 / stoneInfluence per step. Enemy stones receive influence but don't pass it on
+     *
+     * @param stones         the position
+     * @param index          array index of the stone -- must not be empty
+     * @param stoneInfluence how far the influence of a stone reaches
+     * @param heatmap        the heatmap to add to
+     * @param weight         multiplies the influence, eg -1 to remove a stone's influence again
+     */
+    public static void addStone(Stone[] stones, int index, int stoneInfluence, double[] heatmap, double weight) {
+        double[] strengths = getStrengths(stoneInfluence);
+        boolean black = stones[index].isBlack();
+        double sign = black ? weight : -weight;
+        int originX = index / Board.BOARD_SIZE;
+        int originY = index % Board.BOARD_SIZE;
+
+        // every step moves one further away, so a point is reached exactly when the point before it towards the
+        // origin passes influence on. Sweep the rows outwards from the origin's row, one bit per point of a row
+        long originRow = addRow(stones, originX, originX, originY, 0, strengths, sign, black, heatmap);
+        long previous = originRow;
+        for (int x = originX + 1; x < Board.BOARD_SIZE && previous != 0; x++)
+            previous = addRow(stones, x, originX, originY, previous, strengths, sign, black, heatmap);
+        previous = originRow;
+        for (int x = originX - 1; x >= 0 && previous != 0; x--)
+            previous = addRow(stones, x, originX, originY, previous, strengths, sign, black, heatmap);
+    }
+
+    /**
+     * Adds the influence of one stone to one row of the board
+     *
+     * @param previous the points of the row closer to the origin that pass influence on, or 0 for the origin's row
+     * @return the points of this row that pass influence on
+     */
+    private static long addRow(Stone[] stones, int x, int originX, int originY, long previous, double[] strengths,
+                               double sign, boolean black, double[] heatmap) {
+        int rowDistance = Math.abs(x - originX);
+        long spreading = 0;
+
+        // the origin's column first, then outwards on either side of it
+        for (int y = originY; y >= 0; y--)
+            spreading = addPoint(stones, x, y, y == originY ? -1 : y + 1, rowDistance + originY - y, previous,
+                    spreading, strengths, sign, black, heatmap);
+        for (int y = originY + 1; y < Board.BOARD_SIZE; y++)
+            spreading = addPoint(stones, x, y, y - 1, rowDistance + y - originY, previous, spreading, strengths,
+                    sign, black, heatmap);
+        return spreading;
+    }
+
+    /**
+     * @param before   the y of the point before this one in the row, towards the origin, or -1 if there is none
+     * @param distance the distance of this point from the origin
+     * @return spreading, plus this point if it passes influence on
+     */
+    private static long addPoint(Stone[] stones, int x, int y, int before, int distance, long previous, long spreading,
+                                 double[] strengths, double sign, boolean black, double[] heatmap) {
+        boolean reached = distance == 0 || (previous & 1L << y) != 0 || before >= 0 && (spreading & 1L << before) != 0;
+        if (!reached)
+            return spreading;
+
+        int point = Board.getIndex(x, y);
+        heatmap[point] += sign * strengths[distance];
+
+        // if we run into enemy, we cant repopulate, is the rule.
+        if (black ? stones[point].isWhite() : stones[point].isBlack())
+            return spreading;
+        if (distance + 1 >= strengths.length || strengths[distance + 1] == 0)
+            return spreading;
+        return spreading | 1L << y;
+    }
+
+    /**
+     * @return the influence of a stone at each distance from it. Computed by repeated subtraction, so that the sums
+     * come out exactly like they always have. Must not be modified
+     */
+    private static double[] getStrengths(int stoneInfluence) {
+        if (stoneInfluence > 0 && stoneInfluence < STRENGTHS.length)
+            return STRENGTHS[stoneInfluence];
+        return computeStrengths(stoneInfluence);
+    }
+
+    private static double[] computeStrengths(int stoneInfluence) {
+        double degrade = 1.0 / stoneInfluence;
+        double[] strengths = new double[2 * Board.BOARD_SIZE];
+        strengths[0] = 1;
+        for (int d = 1; d < strengths.length; d++)
+            strengths[d] = Math.max(0, strengths[d - 1] - degrade);
+        return strengths;
+    }
+
+    /**
+     * @return the largest distance at which a stone still has influence
+     */
+    private static int getReach(int stoneInfluence) {
+        double[] strengths = getStrengths(stoneInfluence);
+        int reach = 0;
+        while (reach + 1 < strengths.length && strengths[reach + 1] != 0)
+            reach++;
+        return reach;
+    }
+
+    private static int getDistance(int first, int second) {
+        return Math.abs(first / Board.BOARD_SIZE - second / Board.BOARD_SIZE) +
+                Math.abs(first % Board.BOARD_SIZE - second % Board.BOARD_SIZE);
+    }
+
+    /**
+     * @return whether or not a stone of type blocker stops the influence of a stone of type stone
+     */
+    private static boolean isEnemy(Stone blocker, Stone stone) {
+        return stone.isBlack() ? blocker.isWhite() : stone.isWhite() && blocker.isBlack();
+    }
+}
@@ -0,0 +1,21 @@
+package featurecat.omega.rules;
+
+/**
+ * A way of computing how much influence each player has on each point of the board.
+ */
+public interface InfluenceModel {
+    /**
+     * @return a short name to show the user
+     */
+    String getName();
+
+    /**
+     * Computes the raw influence of a position
+     *
+     * @param stones         the position
+     * @param stoneInfluence how far the influence of a stone reaches, 1 to 20 in the UI
+     * @param heatmap        receives the influence of each point: positive for black, negative for white, 1 and -1
+     *                       being the influence on a stone's own point. Values outside of that are allowed
+     */
+    void computeInfluence(Stone[] stones, int stoneInfluence, double[] heatmap);
+}
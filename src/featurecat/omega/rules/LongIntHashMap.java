@@ -0,0 +1,135 @@
+package featurecat.omega.rules;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive longs to primitive ints, using open addressing with linear probing. Avoids boxing a Long
+ * and an Integer for every entry, which matters when every move of every replayed game touches the map.
+ */
+public class LongIntHashMap {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    // key 0 marks a free slot, so the entry for key 0 itself is stored separately
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        keys = new long[DEFAULT_CAPACITY];
+        values = new int[DEFAULT_CAPACITY];
+    }
+
+    /**
+     * @param key          the key to look up
+     * @param defaultValue the value to return if there is no such key
+     * @return the value stored for key, or defaultValue
+     */
+    public int get(long key, int defaultValue) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : defaultValue;
+
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key)
+                return values[slot];
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        if (key == 0)
+            return hasZeroKey;
+
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key)
+                return true;
+        }
+        return false;
+    }
+
+    public void put(long key, int value) {
+        if (key == 0) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+
+        // keep the load factor at or below one half so probe sequences stay short
+        if (++size * 2 > keys.length)
+            resize(keys.length * 2);
+    }
+
+    public void remove(long key) {
+        if (key == 0) {
+            hasZeroKey = false;
+            return;
+        }
+
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != key) {
+            if (keys[slot] == 0)
+                return;
+            slot = (slot + 1) & mask;
+        }
+
+        // shift later entries of the probe sequence back so no lookup stops early at the freed slot
+        int free = slot;
+        for (slot = (slot + 1) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+            int home = slot(keys[slot], mask);
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                keys[free] = keys[slot];
+                values[free] = values[slot];
+                free = slot;
+            }
+        }
+        keys[free] = 0;
+        size--;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        size = 0;
+        hasZeroKey = false;
+    }
+
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0)
+                put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        // zobrist keys are already random, but mix anyway in case keys with poor low bits are used
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
@@ -1,30 +1,107 @@
 package featurecat.omega.rules;
 
 import featurecat.omega.Omega;
+import featurecat.omega.analysis.SGFImporter;
 import featurecat.omega.analysis.SGFParser;
+import featurecat.omega.analysis.SGFTokenizer;
 
 import javax.swing.*;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
 
 public class Search {
 
     public static String directory = "";
 
+    private static final Logger logger = Logger.getLogger(Search.class.getName());
+
+    /**
+     * Searches the files, then shows the first matching position, on the event dispatch thread
+     */
     public static void getHeatmapsOfMatchingPositions(Stone[] position, String[] filenames) {
+        List<SearchData> positionList = getMatchingPositions(position, Arrays.stream(filenames).map(Paths::get));
+        if (!positionList.isEmpty()) {
+            Board board = positionList.get(0).getBoard();
+            SwingUtilities.invokeLater(() -> Omega.setBoard(board));
+        }
+    }
+
+    /**
+     * Searches every SGF file in a directory and its subdirectories, which are read and searched in parallel. Files
+     * and directories that can't be read are logged and skipped
+     *
+     * @param position  the position to match
+     * @param directory the directory to search
+     * @param found     given each matching position as soon as it is found, from the search's threads, several at a
+     *                  time
+     * @param progress  told how far the search has got, now and then, from the search's threads
+     * @return the final progress
+     */
+    public static SGFImporter.Progress getMatchingPositions(Stone[] position, Path directory, Consumer<SearchData> found,
+                                                            Consumer<SGFImporter.Progress> progress) throws IOException {
+        return new SGFImporter(new Matches(position, found, progress)).importDirectory(directory);
+    }
+
+    /**
+     * Get all matching positions in many files, which are read and searched in parallel. Files that can't be read
+     * are logged and skipped
+     *
+     * @param position the position to match
+     * @param files    the files to search
+     * @return all matching positions, ordered by file
+     */
+    public static List<SearchData> getMatchingPositions(Stone[] position, Stream<Path> files) {
+        // the games of a collection can be searched several at a time
+        Map<Path, List<SearchData>> positionsByFile = new ConcurrentHashMap<>();
+        Consumer<SearchData> found = searchData -> positionsByFile
+                .computeIfAbsent(searchData.file, f -> Collections.synchronizedList(new ArrayList<>())).add(searchData);
+        new SGFImporter(new Matches(position, found, p -> logger.fine(p.toString()))).importFiles(files);
+
         ArrayList<SearchData> positionList = new ArrayList<>();
-        for (String filename : filenames) {
-            positionList.addAll(getMatchingPositions(position, filename));
-        }
-        for (SearchData searchData : positionList) {
-            Board board = new Board(searchData.boardHistoryList);
-            int moveNumber = searchData.moveNumber;
-            System.out.println("movenumber " + moveNumber);
-            while (board.previousMove()) ;
-            for (int i = 0; i < moveNumber; i++) {
-                board.nextMove();
-            }
-            Omega.board = board;
+        for (List<SearchData> filePositions : new TreeMap<>(positionsByFile).values())
+            positionList.addAll(filePositions);
+        return positionList;
+    }
+
+    /**
+     * Hands out the matching positions of the games an import hands out
+     */
+    private static class Matches implements SGFImporter.Listener {
+        private final Patterns patterns;
+        private final Consumer<SearchData> found;
+        private final Consumer<SGFImporter.Progress> progress;
+
+        Matches(Stone[] position, Consumer<SearchData> found, Consumer<SGFImporter.Progress> progress) {
+            patterns = new Patterns(position);
+            this.found = found;
+            this.progress = progress;
+        }
+
+        @Override
+        public void gameImported(Path file, GameTree game) {
+            getMatchingPositions(patterns, file, game).forEach(found);
+        }
+
+        @Override
+        public void fileFailed(Path file, Throwable e) {
+            logger.log(Level.WARNING, "Failed to open " + file, e);
+        }
+
+        @Override
+        public void progressed(SGFImporter.Progress progress) {
+            this.progress.accept(progress);
         }
     }
 
@@ -33,64 +110,111 @@ public class Search {
      *
      * @param position the position to match
      * @param filename the file to search
-     * @return arraylist of all matching positions
+     * @return arraylist of all matching positions. Empty if the file can't be read
      */
     public static ArrayList<SearchData> getMatchingPositions(Stone[] position, String filename) {
-        Board fileBoard = new Board();
+        Path file = Paths.get(filename);
+        SGFTokenizer tokenizer;
         try {
-            System.out.println(filename);
-            SGFParser.load(filename, fileBoard);
+            logger.fine(filename);
+            tokenizer = new SGFTokenizer(SGFParser.read(file));
         } catch (IOException err) {
-            JOptionPane.showConfirmDialog(null, "Failed to open the SGF file.", "Error", JOptionPane.ERROR);
+            logger.log(Level.WARNING, "Failed to open " + filename, err);
+            return new ArrayList<>();
         }
-        while (fileBoard.previousMove()) ;
+        if (!tokenizer.findGameTree())
+            return new ArrayList<>();
+        return getMatchingPositions(new Patterns(position), file, SGFParser.parse(tokenizer));
+    }
+
+    /**
+     * @return the positions of a game that match, by move number, that is the number of moves played to reach them
+     */
+    private static ArrayList<SearchData> getMatchingPositions(Patterns patterns, Path file, GameTree game) {
+        Board fileBoard = new Board();
+        fileBoard.load(game);
         BoardHistoryList boardHistoryList = fileBoard.getHistory();
         ArrayList<SearchData> positionList = new ArrayList<>();
+
         int moveNumber = 0;
         while (true) {
             BoardData boardData = boardHistoryList.next();
             if (boardData == null) {
                 break;
             }
-            Stone[] symmetricPosition = compareBoardPositions(position, boardData.stones, boardData.lastMove);
+            moveNumber ++;
+            Stone[] symmetricPosition = compareBoardPositions(patterns.symmetricPositions, patterns.bitboards, boardData);
             if (symmetricPosition != null) {
-                positionList.add(new SearchData(symmetricPosition, boardHistoryList, moveNumber));
+                positionList.add(new SearchData(symmetricPosition, file, game, moveNumber));
             }
-            moveNumber ++;
         }
         return positionList;
     }
 
+    /**
+     * The symmetries of a position and their bitboards. They only depend on the position, so they are built once
+     * per search
+     */
+    private static class Patterns {
+        final Stone[][] symmetricPositions;
+        final Bitboard[][] bitboards;
+
+        Patterns(Stone[] position) {
+            symmetricPositions = getSymmetricPositions(position);
+            bitboards = new Bitboard[symmetricPositions.length][];
+            for (int i = 0; i < symmetricPositions.length; i++) {
+                Stone[] p = symmetricPositions[i];
+                bitboards[i] = new Bitboard[]{Bitboard.of(p, Stone.BLACK), Bitboard.of(p, Stone.WHITE),
+                        Bitboard.of(p, Stone.EMPTY), Bitboard.of(p, Stone.UNSPECIFIED).not()};
+            }
+        }
+    }
+
     /**
      * Check if the position is in the file
      *
-     * @param position the position to examine
-     * @param fileStones the file to search the position
-     * @param lastMove last move, must be in the position
-     * @return the symmetric position that the fileStones match
+     * @param symmetricPositions the position to examine, in all of its symmetries and colors
+     * @param patterns for each symmetric position, the bitboards of its black, white, empty and specified points
+     * @param fileData the file position to search the position in
+     * @return the symmetric position that the file position matches
      */
-    private static Stone[] compareBoardPositions(Stone[] position, Stone[] fileStones, int[] lastMove) {
-        Stone[] flippedPosition = flipColor(position);
-        for (Stone[] p : new Stone[][]{position, flippedPosition}) {
-            for (int mode = 0; mode < 8; mode ++) {
-                Stone[] symmetricPosition = getSymmetricStones(p, mode);
-                boolean hasPosition = true;
-                for (int i = 0; i < Board.BOARD_SIZE * Board.BOARD_SIZE; i++) {
-                    if ((!symmetricPosition[i].equals(Stone.UNSPECIFIED) ||
-                            (i == lastMove[0] * Board.BOARD_SIZE + lastMove[1])) &&
-                            !symmetricPosition[i].equals(fileStones[i])) {
-                        hasPosition = false;
-                        break;
-                    }
-                }
-                if (hasPosition) {
-                    return symmetricPosition;
-                }
+    private static Stone[] compareBoardPositions(Stone[][] symmetricPositions, Bitboard[][] patterns, BoardData fileData) {
+        // last move must be in the position
+        if (fileData.lastMove == null) {
+            return null;
+        }
+        int lastMoveIndex = Board.getIndex(fileData.lastMove[0], fileData.lastMove[1]);
+        Bitboard fileBlack = fileData.getBlack();
+        Bitboard fileWhite = fileData.getWhite();
+        Bitboard fileEmpty = fileData.getEmpty();
+
+        for (int i = 0; i < symmetricPositions.length; i++) {
+            Bitboard[] pattern = patterns[i];
+            Bitboard compared = pattern[3].with(lastMoveIndex);
+            boolean hasPosition = !compared.intersects(pattern[0].xor(fileBlack)) &&
+                    !compared.intersects(pattern[1].xor(fileWhite)) &&
+                    !compared.intersects(pattern[2].xor(fileEmpty));
+            if (hasPosition) {
+                return symmetricPositions[i];
             }
         }
         return null;
     }
 
+    /**
+     * @param position original board position
+     * @return the 8 symmetries of the position, followed by the 8 symmetries of the position with colors flipped
+     */
+    private static Stone[][] getSymmetricPositions(Stone[] position) {
+        Stone[][] symmetricPositions = new Stone[16][];
+        Stone[] flippedPosition = flipColor(position);
+        for (int mode = 0; mode < 8; mode ++) {
+            symmetricPositions[mode] = getSymmetricStones(position, mode);
+            symmetricPositions[mode + 8] = getSymmetricStones(flippedPosition, mode);
+        }
+        return symmetricPositions;
+    }
+
     private static Stone[] flipColor(Stone[] position) {
         Stone[] flippedPosition = new Stone[Board.BOARD_SIZE * Board.BOARD_SIZE];
         for (int i = 0; i < Board.BOARD_SIZE * Board.BOARD_SIZE; i++) {
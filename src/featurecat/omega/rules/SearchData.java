@@ -1,15 +1,28 @@
 package featurecat.omega.rules;
 
-import java.util.ArrayList;
+import java.nio.file.Path;
 
 public class SearchData {
     public Stone[] symmetricPosition;
-    public BoardHistoryList boardHistoryList;
+    // the file and the game the position was found in. The game is only played again when the position is shown
+    public Path file;
+    public GameTree game;
     public int moveNumber;
 
-    public SearchData (Stone[] symmetricPosition, BoardHistoryList boardHistoryList, int moveNumber) {
+    public SearchData (Stone[] symmetricPosition, Path file, GameTree game, int moveNumber) {
         this.symmetricPosition = symmetricPosition;
-        this.boardHistoryList = boardHistoryList;
+        this.file = file;
+        this.game = game;
         this.moveNumber = moveNumber;
     }
+
+    /**
+     * @return a new board holding the game, at the position found
+     */
+    public Board getBoard() {
+        Board board = new Board();
+        board.load(game);
+        board.seek(moveNumber);
+        return board;
+    }
 }
@@ -7,6 +7,7 @@ import java.util.Random;
  */
 public class Zobrist {
     private static final long[] blackZobrist, whiteZobrist;
+    private static final long blackToPlayZobrist;
 
     // initialize zobrist hashing
     static {
@@ -18,6 +19,7 @@ public class Zobrist {
             blackZobrist[i] = random.nextLong();
             whiteZobrist[i] = random.nextLong();
         }
+        blackToPlayZobrist = random.nextLong();
     }
 
     // hash to be used to compare two board states
@@ -56,6 +58,14 @@ public class Zobrist {
         }
     }
 
+    /**
+     * @param blackToPlay whether or not it is black's turn
+     * @return a hash identifying this position together with the player to move
+     */
+    public long positionKey(boolean blackToPlay) {
+        return blackToPlay ? zhash ^ blackToPlayZobrist : zhash;
+    }
+
     @Override
     public boolean equals(Object o) {
         return o instanceof Zobrist && (((Zobrist) o).zhash == zhash);
@@ -1,38 +1,46 @@
 package featurecat.omega.ui;
 
-import featurecat.omega.rules.Zobrist;
 import featurecat.omega.Omega;
 import featurecat.omega.rules.Board;
+import featurecat.omega.rules.BoardData;
+import featurecat.omega.rules.DistanceInfluenceModel;
+import featurecat.omega.rules.Heatmaps;
+import featurecat.omega.rules.InfluenceModel;
 import featurecat.omega.rules.Stone;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
-import java.awt.font.TextAttribute;
-import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 
 public class BoardRenderer {
     private static final double MARGIN = 0.03; // percentage of the boardLength to offset before drawing black lines
     private static final double STARPOINT_DIAMETER = 0.015;
+    private static final int FONT_MEASURE_SIZE = 100; // font size that strings are measured at before fitting them
 
     private int x, y;
     private int boardLength;
 
     private int scaledMargin, availableLength, squareLength, stoneRadius;
 
+    // the length asked for with setBoardLength, and the length it was fitted to, to skip fitting it again every frame
+    private int requestedBoardLength = -1, fittedBoardLength;
+
     private BufferedImage cachedBackgroundImage = null;
+    private BufferedImage cachedIntersectionsImage = null;
 
     private BufferedImage cachedStonesImage = null;
     private BufferedImage cachedStonesShadowImage = null;
-    private Zobrist cachedZhash = new Zobrist(); // defaults to an empty board
+    private Stone[] cachedStones = null; // the position drawn on the cached stone images
+
+    // above this many changed points, redrawing everything is as cheap as redrawing each of them
+    private static final int MAX_DIRTY_POINTS = 24;
+    private final int[] dirtyPoints = new int[MAX_DIRTY_POINTS + 1];
 
     private BufferedImage branchStonesImage = null;
     private BufferedImage branchStonesShadowImage = null;
 
+    private StoneSprites sprites = null;
+    private final HeatmapLayer heatmapLayer = new HeatmapLayer();
+
 
     /**
      * Draw a go board
@@ -43,17 +51,20 @@ public class BoardRenderer {
 
         setupSizeParameters();
 
+        // read the position once, so that every layer of this frame shows the same one
+        BoardData data = Omega.board.getData();
+
         drawBackground(g);
 
-        drawHeatmap(g);
+        drawHeatmap(g, data);
         drawIntersections(g);
 
         if (Omega.showStones) {
-            drawStones();
+            drawStones(data);
 
             renderImages(g);
             // actually, if you end the if statement here, Influencie could be a nice blind-go client :). or as-is too is good.
-            drawMoveNumbers(g);
+            drawMoveNumbers(g, data);
         }
     }
 
@@ -61,6 +72,12 @@ public class BoardRenderer {
      * Calculate good values for boardLength, scaledMargin, availableLength, and squareLength
      */
     private void setupSizeParameters() {
+        if (boardLength == requestedBoardLength) {
+            boardLength = fittedBoardLength;
+            return;
+        }
+        requestedBoardLength = boardLength;
+
         int[] calculatedPixelMargins = calculatePixelMargins();
         boardLength = calculatedPixelMargins[0];
         scaledMargin = calculatedPixelMargins[1];
@@ -68,6 +85,7 @@ public class BoardRenderer {
 
         squareLength = calculateSquareLength(availableLength);
         stoneRadius = squareLength / 2 - 1;
+        fittedBoardLength = boardLength;
     }
 
     public static int intersectionColor = 0;
@@ -105,18 +123,35 @@ public class BoardRenderer {
         g0.drawImage(cachedBackgroundImage, 0, 0, null);
     }
 
-    private void drawIntersections(Graphics2D g) {
+    /**
+     * Draw the lines and star points. We cache the image, since the star points are antialiased and slow to draw.
+     */
+    private void drawIntersections(Graphics2D g0) {
+        if (cachedIntersectionsImage == null || cachedIntersectionsImage.getWidth() != boardLength ||
+                cachedIntersectionColor != intersectionColor) {
+            cachedIntersectionColor = intersectionColor;
+
+            cachedIntersectionsImage = StoneSprites.createImage(boardLength, boardLength);
+            Graphics2D g = cachedIntersectionsImage.createGraphics();
+            drawLines(g);
+            g.dispose();
+        }
+
+        if (intersectionColor != 1)
+            g0.drawImage(cachedIntersectionsImage, x, y, null);
+    }
+
+    private void drawLines(Graphics2D g) {
         // draw the lines
-        cachedIntersectionColor = intersectionColor;
         if (intersectionColor != 1) {
             g.setColor(intersectionColor == 2 ? Color.WHITE : Color.BLACK);
             for (int i = 0; i < Board.BOARD_SIZE; i++) {
-                g.drawLine(x + scaledMargin, y + scaledMargin + squareLength * i,
-                        x + scaledMargin + availableLength - 1, y + scaledMargin + squareLength * i);
+                g.drawLine(scaledMargin, scaledMargin + squareLength * i,
+                        scaledMargin + availableLength - 1, scaledMargin + squareLength * i);
             }
             for (int i = 0; i < Board.BOARD_SIZE; i++) {
-                g.drawLine(x + scaledMargin + squareLength * i, y + scaledMargin,
-                        x + scaledMargin + squareLength * i, y + scaledMargin + availableLength - 1);
+                g.drawLine(scaledMargin + squareLength * i, scaledMargin,
+                        scaledMargin + squareLength * i, scaledMargin + availableLength - 1);
             }
 
             // draw the star points
@@ -127,8 +162,8 @@ public class BoardRenderer {
             final int STARPOINT_GRID_DISTANCE = 6;
             for (int i = 0; i < NUM_STARPOINTS; i++) {
                 for (int j = 0; j < NUM_STARPOINTS; j++) {
-                    int centerX = x + scaledMargin + squareLength * (STARPOINT_EDGE_OFFSET + STARPOINT_GRID_DISTANCE * i);
-                    int centerY = y + scaledMargin + squareLength * (STARPOINT_EDGE_OFFSET + STARPOINT_GRID_DISTANCE * j);
+                    int centerX = scaledMargin + squareLength * (STARPOINT_EDGE_OFFSET + STARPOINT_GRID_DISTANCE * i);
+                    int centerY = scaledMargin + squareLength * (STARPOINT_EDGE_OFFSET + STARPOINT_GRID_DISTANCE * j);
                     fillCircle(g, centerX, centerY, starPointRadius);
                 }
             }
@@ -136,39 +171,95 @@ public class BoardRenderer {
     }
 
     /**
-     * Draw the stones. We cache the image for a performance boost.
+     * Draw the stones. We cache the image for a performance boost, and only redraw the points that changed since the
+     * last position drawn.
      */
-    private void drawStones() {
-        // draw a new image if frame size changes or board state changes
-        if (cachedStonesImage == null || cachedStonesImage.getWidth() != boardLength ||
-                cachedStonesImage.getHeight() != boardLength ||
-                !cachedZhash.equals(Omega.board.getData().zobrist) ||
-                cachedBlackStoneOutline != blackStoneOutline) {
+    private void drawStones(BoardData data) {
+        // only make new images if the frame size changes
+        boolean resized = cachedStonesImage == null || cachedStonesImage.getWidth() != boardLength ||
+                cachedStonesImage.getHeight() != boardLength;
+        if (resized) {
+            cachedStonesImage = StoneSprites.createImage(boardLength, boardLength);
+            cachedStonesShadowImage = StoneSprites.createImage(boardLength, boardLength);
+        }
 
+        if (resized || cachedStones == null || cachedBlackStoneOutline != blackStoneOutline) {
             cachedBlackStoneOutline = blackStoneOutline;
-            cachedStonesImage = new BufferedImage(boardLength, boardLength, BufferedImage.TYPE_INT_ARGB);
-            cachedStonesShadowImage = new BufferedImage(boardLength, boardLength, BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g = cachedStonesImage.createGraphics();
-            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-            Graphics2D gShadow = cachedStonesShadowImage.createGraphics();
-            gShadow.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            redrawStones(data.stones, -1);
+        } else if (cachedStones != data.stones) {
+            int changedCount = 0;
+            for (int i = 0; i < data.stones.length && changedCount <= MAX_DIRTY_POINTS; i++) {
+                if (data.stones[i] != cachedStones[i])
+                    dirtyPoints[changedCount++] = i;
+            }
+            for (int i = 0; i < changedCount && changedCount <= MAX_DIRTY_POINTS; i++)
+                redrawStones(data.stones, dirtyPoints[i]);
+            if (changedCount > MAX_DIRTY_POINTS)
+                redrawStones(data.stones, -1);
+        }
 
-            // we need antialiasing to make the stones pretty. Java is a bit slow at antialiasing; that's why we want the cache
-            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-            gShadow.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        cachedStones = data.stones;
+    }
 
-            for (int i = 0; i < Board.BOARD_SIZE; i++) {
-                for (int j = 0; j < Board.BOARD_SIZE; j++) {
-                    int stoneX = scaledMargin + squareLength * i;
-                    int stoneY = scaledMargin + squareLength * j;
-                    drawStone(g, gShadow, stoneX, stoneY, Omega.board.getStones()[Board.getIndex(i, j)]);
-                }
+    /**
+     * Redraws the stones and shadows of a region of the cached images
+     *
+     * @param stones the position
+     * @param dirty  the array index of the point whose region to redraw, or -1 to redraw everything
+     */
+    private void redrawStones(Stone[] stones, int dirty) {
+        Graphics2D g = cachedStonesImage.createGraphics();
+        Graphics2D gShadow = cachedStonesShadowImage.createGraphics();
+
+        StoneSprites sprites = getSprites();
+        int stoneReach = redrawRegion(g, dirty, stoneRadius + 2);
+        int shadowReach = redrawRegion(gShadow, dirty, sprites.getShadowRadius());
+
+        // stones overlap their neighbours a little, and shadows a lot. Redraw every one that reaches into the region,
+        // in the same order as a full redraw so that they overlap the same way
+        for (int i = 0; i < Board.BOARD_SIZE; i++) {
+            for (int j = 0; j < Board.BOARD_SIZE; j++) {
+                Stone stone = stones[Board.getIndex(i, j)];
+                if (stone == Stone.EMPTY)
+                    continue;
+
+                int stoneX = scaledMargin + squareLength * i;
+                int stoneY = scaledMargin + squareLength * j;
+                if (dirty < 0 || isWithin(dirty, i, j, shadowReach))
+                    sprites.drawShadow(gShadow, stoneX, stoneY, stone);
+                if (dirty < 0 || isWithin(dirty, i, j, stoneReach))
+                    sprites.drawStone(g, stoneX, stoneY, stone);
             }
+        }
 
-            cachedZhash = Omega.board.getData().zobrist;
-            g.dispose();
-            gShadow.dispose();
+        g.dispose();
+        gShadow.dispose();
+    }
+
+    /**
+     * Clears a region of a cached image and clips g to it
+     *
+     * @param dirty  the array index of the point at the center of the region, or -1 for the whole image
+     * @param radius how far the region reaches from the point, in pixels
+     * @return how many intersections away a point can be and still draw into the region
+     */
+    private int redrawRegion(Graphics2D g, int dirty, int radius) {
+        int regionX = 0, regionY = 0, regionLength = boardLength;
+        if (dirty >= 0) {
+            regionX = scaledMargin + squareLength * (dirty / Board.BOARD_SIZE) - radius;
+            regionY = scaledMargin + squareLength * (dirty % Board.BOARD_SIZE) - radius;
+            regionLength = 2 * radius + 1;
         }
+
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(regionX, regionY, regionLength, regionLength);
+        g.setComposite(AlphaComposite.SrcOver);
+        g.setClip(regionX, regionY, regionLength, regionLength);
+        return (2 * radius + squareLength - 1) / squareLength;
+    }
+
+    private static boolean isWithin(int index, int x, int y, int reach) {
+        return Math.abs(index / Board.BOARD_SIZE - x) <= reach && Math.abs(index % Board.BOARD_SIZE - y) <= reach;
     }
 
     /**
@@ -185,10 +276,10 @@ public class BoardRenderer {
     /**
      * Draw move numbers and/or mark the last played move
      */
-    private void drawMoveNumbers(Graphics2D g) {
+    private void drawMoveNumbers(Graphics2D g, BoardData data) {
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        int[] lastMove = Omega.board.getLastMove();
+        int[] lastMove = data.lastMove;
         if (lastMove != null) {
             // mark the last coordinate
             int lastMoveMarkerRadius = stoneRadius / 2;
@@ -196,18 +287,25 @@ public class BoardRenderer {
             int stoneY = y + scaledMargin + squareLength * lastMove[1];
 
             // set color to the opposite color of whatever is on the board
-            g.setColor(Omega.board.getStones()[Board.getIndex(lastMove[0], lastMove[1])].isWhite() ?
+            g.setColor(data.stones[Board.getIndex(lastMove[0], lastMove[1])].isWhite() ?
                     Color.BLACK : Color.WHITE);
             drawCircle(g, stoneX, stoneY, lastMoveMarkerRadius);
-        } else if (lastMove == null && Omega.board.getData().lastMoveColor != Stone.EMPTY && Omega.board.getData().moveNumber != 0) {
-            g.setColor(Omega.board.getData().blackToPlay ? new Color(255, 255, 255, 150) : new Color(0, 0, 0, 150));
+        } else if (lastMove == null && data.lastMoveColor != Stone.EMPTY && data.moveNumber != 0) {
+            g.setColor(data.blackToPlay ? RenderResources.PASS_WHITE : RenderResources.PASS_BLACK);
             g.fillOval(x + boardLength / 2 - 4 * stoneRadius, y + boardLength / 2 - 4 * stoneRadius, stoneRadius * 8, stoneRadius * 8);
-            g.setColor(Omega.board.getData().blackToPlay ? new Color(0, 0, 0, 255) : new Color(255, 255, 255, 255));
+            g.setColor(data.blackToPlay ? Color.BLACK : Color.WHITE);
             drawString(g, x + boardLength / 2, y + boardLength / 2, "Open Sans", "pass", stoneRadius * 4, stoneRadius * 6);
         }
     }
 
     public static boolean useGradient = true;
+
+    // whether to draw a cheap preview of the heatmap, eg while a slider is dragged
+    private volatile boolean previewing = false;
+    // previews use the distance model, whose cost depends neither on the stones nor on their influence, written
+    // into a buffer of the render thread
+    private static final InfluenceModel PREVIEW_MODEL = new DistanceInfluenceModel();
+    private final double[] previewHeatmap = new double[Board.BOARD_SIZE * Board.BOARD_SIZE];
     public static int maxAlpha = 180;
     public static int whiteAuraRed = 0x00; // old 0x184bb5
     public static int whiteAuraGreen = 0x80;// new 0x00B2FF 6e
@@ -218,43 +316,34 @@ public class BoardRenderer {
     public static int blackAuraBlue = 0x4F; // ff8000
 
     /**
-     * Draw all of Leelaz's suggestions as colored stones with winrate/playout statistics overlayed
+     * @param previewing whether to draw a cheap preview of the heatmap from now on, or the full quality one
+     */
+    public void setPreviewing(boolean previewing) {
+        this.previewing = previewing;
+    }
+
+    /**
+     * Draw the influence of each player as a colored glow
      */
-    private void drawHeatmap(Graphics2D g) {
+    private void drawHeatmap(Graphics2D g, BoardData data) {
         if (Omega.showHeatmap) {
-            final double[] heatmap = Omega.board.getInfluenceHeatmap();
-            for (int i = 0; i < Board.BOARD_SIZE; i++) {
-                for (int j = 0; j < Board.BOARD_SIZE; j++) {
-
-                    int suggestionX = x + scaledMargin + squareLength * i;
-                    int suggestionY = y + scaledMargin + squareLength * j;
-                    double heatValue = heatmap[Board.getIndex(i, j)];
-
-                    double alphaConst = Math.min(255, useGradient ? maxAlpha : maxAlpha * 1.75);
-                    int alpha = (int) Math.abs(alphaConst * (heatValue - 0.5) * 2);
-
-                    Color hsbColor = heatValue > 0.5 ? new Color(blackAuraRed, blackAuraGreen, blackAuraBlue) : new Color(whiteAuraRed, whiteAuraGreen, whiteAuraBlue);
-                    Color color = new Color(hsbColor.getRed(), hsbColor.getGreen(), hsbColor.getBlue(), alpha);
-
-                    Paint original = g.getPaint();
-                    g.setColor(color);
-                    if (useGradient) {
-                        Point2D center = new Point2D.Float(suggestionX, suggestionY);
-                        float radius = squareLength * 2 + 2;
-                        float[] dist = {0.0f, 0.5f + 0.5f * (float) Math.max(0, Math.log((float) alpha / alphaConst) / 0.8 + 1)}; // out of 0.7, 0.8, 0.9, 1.0, 1.1, I liked 0.8 best
-                        Color[] colors = {color, new Color(color.getRed(), color.getGreen(), color.getBlue(), 0)};
-                        RadialGradientPaint p =
-                                new RadialGradientPaint(center, radius, dist, colors);
-                        g.setPaint(p);
-                        int gradRadius = (int) radius;
-                        g.fillRect(suggestionX - gradRadius, suggestionY - gradRadius, gradRadius * 2 + 2, gradRadius * 2 + 2);
-                    } else {
-                        g.fillRect(suggestionX - stoneRadius, suggestionY - stoneRadius, squareLength, squareLength);
-                    }
-                    g.setPaint(original);
-                    g.setStroke(new BasicStroke(1));
-                }
+            int blackColor = blackAuraRed << 16 | blackAuraGreen << 8 | blackAuraBlue;
+            int whiteColor = whiteAuraRed << 16 | whiteAuraGreen << 8 | whiteAuraBlue;
+
+            if (previewing) {
+                // flat squares need neither the gradient heatmap nor the smoothing. The selected model is left to the
+                // refiner, and the preview is not cached so that it never stands in for the real heatmap
+                Heatmaps.compute(data.stones, PREVIEW_MODEL, null, Board.stoneInfluence, false, previewHeatmap);
+                int alphaConst = (int) Math.min(255, maxAlpha * 1.75);
+                heatmapLayer.drawPreview(g, previewHeatmap, x + scaledMargin, y + scaledMargin, squareLength,
+                        alphaConst, blackColor, whiteColor);
+                return;
             }
+
+            final double[] heatmap = Omega.board.getInfluenceHeatmap(data, Board.getInfluenceModel(), Board.stoneInfluence, useGradient);
+            int alphaConst = (int) Math.min(255, useGradient ? maxAlpha : maxAlpha * 1.75);
+            heatmapLayer.draw(g, heatmap, x + scaledMargin, y + scaledMargin, squareLength, useGradient, alphaConst,
+                    blackColor, whiteColor);
         }
     }
 
@@ -263,18 +352,14 @@ public class BoardRenderer {
 
     private void drawWoodenBoard(Graphics2D g) {
         // fancy version
-        try {
-            int shadowRadius = (int) (boardLength * MARGIN / 6);
-            cachedBoardTypeIndex = boardTypeIndex;
-            g.drawImage(ImageIO.read(new File("assets/board" + boardTypeIndex + ".png")), x - 2 * shadowRadius, y - 2 * shadowRadius, boardLength + 4 * shadowRadius, boardLength + 4 * shadowRadius, null);
-            g.setStroke(new BasicStroke(shadowRadius * 2));
+        int shadowRadius = (int) (boardLength * MARGIN / 6);
+        cachedBoardTypeIndex = boardTypeIndex;
+        g.drawImage(RenderResources.getImage("assets/board" + boardTypeIndex + ".png"), x - 2 * shadowRadius, y - 2 * shadowRadius, boardLength + 4 * shadowRadius, boardLength + 4 * shadowRadius, null);
+        g.setStroke(RenderResources.getStroke(shadowRadius * 2));
 //             draw border
 //            g.setColor(new Color(0, 0, 0, 50));
 //            g.drawRect(x - shadowRadius, y - shadowRadius, boardLength + 2 * shadowRadius, boardLength + 2 * shadowRadius);
-            g.setStroke(new BasicStroke(1));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        g.setStroke(RenderResources.getStroke(1));
     }
 
     /**
@@ -300,112 +385,13 @@ public class BoardRenderer {
         return new int[]{boardLength, scaledMargin, availableLength};
     }
 
-    private void drawShadow(Graphics2D g, int centerX, int centerY, boolean isGhost) {
-        drawShadow(g, centerX, centerY, isGhost, 1);
-    }
-
-    private static final int SHADOW_SIZE = 100; // TODO remove hardcoded value
-
-    private void drawShadow(Graphics2D g, int centerX, int centerY, boolean isGhost, float shadowStrength) {
-        final int shadowSize = (int) (stoneRadius * 0.3 * SHADOW_SIZE / 100);
-        final int fartherShadowSize = (int) (stoneRadius * 0.17 * SHADOW_SIZE / 100);
-
-
-        final Paint TOP_GRADIENT_PAINT;
-        final Paint LOWER_RIGHT_GRADIENT_PAINT;
-
-        if (isGhost) {
-            TOP_GRADIENT_PAINT = new RadialGradientPaint(new Point2D.Float(centerX, centerY),
-                    stoneRadius + shadowSize, new float[]{((float) stoneRadius / (stoneRadius + shadowSize)) - 0.0001f, ((float) stoneRadius / (stoneRadius + shadowSize)), 1.0f}, new Color[]{
-                    new Color(0, 0, 0, 0), new Color(50, 50, 50, (int) (120 * shadowStrength)), new Color(0, 0, 0, 0)
-            });
-
-            LOWER_RIGHT_GRADIENT_PAINT = new RadialGradientPaint(new Point2D.Float(centerX + shadowSize * 2 / 3, centerY + shadowSize * 2 / 3),
-                    stoneRadius + fartherShadowSize, new float[]{0.6f, 1.0f}, new Color[]{
-                    new Color(0, 0, 0, 180), new Color(0, 0, 0, 0)
-            });
-        } else {
-            TOP_GRADIENT_PAINT = new RadialGradientPaint(new Point2D.Float(centerX, centerY),
-                    stoneRadius + shadowSize, new float[]{0.3f, 1.0f}, new Color[]{
-                    new Color(50, 50, 50, 150), new Color(0, 0, 0, 0)
-            });
-            LOWER_RIGHT_GRADIENT_PAINT = new RadialGradientPaint(new Point2D.Float(centerX + shadowSize, centerY + shadowSize),
-                    stoneRadius + fartherShadowSize, new float[]{0.6f, 1.0f}, new Color[]{
-                    new Color(0, 0, 0, 140), new Color(0, 0, 0, 0)
-            });
-        }
-
-        final Paint originalPaint = g.getPaint();
-
-        g.setPaint(TOP_GRADIENT_PAINT);
-        fillCircle(g, centerX, centerY, stoneRadius + shadowSize);
-        if (!isGhost) {
-            g.setPaint(LOWER_RIGHT_GRADIENT_PAINT);
-            fillCircle(g, centerX + shadowSize, centerY + shadowSize, stoneRadius + fartherShadowSize);
-        }
-        g.setPaint(originalPaint);
-    }
-
     /**
-     * Draws a stone centered at (centerX, centerY)
+     * @return stone sprites for the current stone radius, made again only when it changes
      */
-    private void drawStone(Graphics2D g, Graphics2D gShadow, int centerX, int centerY, Stone color) {
-//        g.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION,
-//                RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-
-        // if no shadow graphics is supplied, just draw onto the same graphics
-        if (gShadow == null)
-            gShadow = g;
-
-        switch (color) {
-            case BLACK:
-                drawShadow(gShadow, centerX, centerY, false);
-                try {
-                    g.drawImage(ImageIO.read(new File("assets/black0.png")), centerX - stoneRadius, centerY - stoneRadius, stoneRadius * 2 + 1, stoneRadius * 2 + 1, null);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                if (blackStoneOutline) {
-                    g.setColor(Color.WHITE);
-                    g.drawOval(centerX - stoneRadius, centerY - stoneRadius, 2 * stoneRadius, 2 * stoneRadius);
-                }
-                break;
-
-            case WHITE:
-                drawShadow(gShadow, centerX, centerY, false);
-                try {
-                    g.drawImage(ImageIO.read(new File("assets/white0.png")), centerX - stoneRadius, centerY - stoneRadius, stoneRadius * 2 + 1, stoneRadius * 2 + 1, null);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                g.setColor(Color.BLACK);
-                g.drawOval(centerX - stoneRadius, centerY - stoneRadius, 2 * stoneRadius, 2 * stoneRadius);
-                break;
-
-            case BLACK_GHOST:
-                drawShadow(gShadow, centerX, centerY, true);
-                try {
-                    g.drawImage(ImageIO.read(new File("assets/black0.png")), centerX - stoneRadius, centerY - stoneRadius, stoneRadius * 2 + 1, stoneRadius * 2 + 1, null);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                break;
-
-            case WHITE_GHOST:
-                drawShadow(gShadow, centerX, centerY, true);
-                try {
-                    g.drawImage(ImageIO.read(new File("assets/white0.png")), centerX - stoneRadius, centerY - stoneRadius, stoneRadius * 2 + 1, stoneRadius * 2 + 1, null);
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                break;
-
-            default:
-        }
+    private StoneSprites getSprites() {
+        if (sprites == null || !sprites.matches(stoneRadius, blackStoneOutline))
+            sprites = new StoneSprites(stoneRadius, blackStoneOutline);
+        return sprites;
     }
 
     /**
@@ -433,11 +419,11 @@ public class BoardRenderer {
      */
     private void drawString(Graphics2D g, int x, int y, String fontString, int style, String string, float maximumFontHeight, double maximumFontWidth, int aboveOrBelow) {
 
-        Font font = makeFont(fontString, style);
+        Font font = RenderResources.getFont(fontString, style, FONT_MEASURE_SIZE);
 
-        // set maximum size of font
-        font = font.deriveFont((float) (font.getSize2D() * maximumFontWidth / g.getFontMetrics(font).stringWidth(string)));
-        font = font.deriveFont(Math.min(maximumFontHeight, font.getSize()));
+        // set maximum size of font. Sizes are rounded to whole points, so that the fonts can be shared
+        int size = Math.round((float) (font.getSize2D() * maximumFontWidth / g.getFontMetrics(font).stringWidth(string)));
+        font = RenderResources.getFont(fontString, style, (int) Math.min(maximumFontHeight, size));
         g.setFont(font);
 
         FontMetrics metrics = g.getFontMetrics(font);
@@ -465,16 +451,6 @@ public class BoardRenderer {
         drawString(g, x, y, fontString, Font.PLAIN, string, maximumFontHeight, maximumFontWidth, 0);
     }
 
-    /**
-     * @return a font with kerning enabled
-     */
-    private Font makeFont(String fontString, int style) {
-        Font font = new Font(fontString, style, 100);
-        Map<TextAttribute, Object> atts = new HashMap<>();
-        atts.put(TextAttribute.KERNING, TextAttribute.KERNING_ON);
-        return font.deriveFont(atts);
-    }
-
 
     /**
      * @return a shorter, rounded string version of playouts. e.g. 345 -> 345, 1265 -> 1.3k, 44556 -> 45k, 133523 -> 134k, 1234567 -> 1.2m
@@ -530,9 +506,9 @@ public class BoardRenderer {
         int marginLength; // the pixel width of the margins
         int boardLengthWithoutMargins; // the pixel width of the game board without margins
 
-        // calculate a good set of boardLength, scaledMargin, and boardLengthWithoutMargins to use
+        // calculate a good set of boardLength, scaledMargin, and boardLengthWithoutMargins to use. Only locals are
+        // set, since the render loop may be drawing with the fields at the same time
         int[] calculatedPixelMargins = calculatePixelMargins();
-        boardLength = calculatedPixelMargins[0];
         marginLength = calculatedPixelMargins[1];
         boardLengthWithoutMargins = calculatedPixelMargins[2];
 
@@ -0,0 +1,218 @@
+package featurecat.omega.ui;
+
+import featurecat.omega.rules.Board;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * The heatmap drawn as one image. The 19x19 heatmap is upsampled to the board's pixels with a gaussian kernel, and
+ * the colors are written straight into the pixels of an image. The result is kept until the heatmap, its colors or
+ * the board size change, so that most frames only draw one image.
+ */
+class HeatmapLayer {
+    private static final int SIZE = Board.BOARD_SIZE;
+
+    // intersections of glow around the board
+    private static final int MARGIN = 2;
+    // width of the smoothing kernel, in intersections
+    private static final double SIGMA = 0.5;
+    // intersections further away than this from a pixel get no weight
+    private static final double SUPPORT = 3 * SIGMA;
+    private static final int TAPS = (int) (2 * SUPPORT) + 1;
+
+    // the pixels are computed here, then copied to cachedImage, which can be kept on the graphics card
+    private BufferedImage raster;
+    private int[] pixels;
+    private BufferedImage cachedImage;
+
+    // one pixel per intersection, for previews
+    private final BufferedImage preview = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+    private final int[] previewPixels = ((DataBufferInt) preview.getRaster().getDataBuffer()).getData();
+
+    // for each pixel coordinate: the first intersection with weight, and the weights of it and the next ones
+    private int[] firstTap;
+    private double[] tapWeights;
+    // for each pixel coordinate: the closest intersection, or -1 off the board
+    private int[] closest;
+
+    // scratch space: the heatmap as signed influence, smoothed along x as smoothedX[y * length + px], and one row of
+    // pixel values
+    private final double[] field = new double[SIZE * SIZE];
+    private double[] smoothedX;
+    private double[] row;
+
+    // what cachedImage was made from. The heatmap cache hands out the same array for the same position and influence
+    // settings, so the array stands for all of those
+    private double[] cachedHeatmap;
+    private boolean cachedUseGradient;
+    private int cachedAlpha, cachedBlackColor, cachedWhiteColor, cachedSquareLength;
+
+    /**
+     * Draws a heatmap, centered on the board's intersections
+     *
+     * @param heatmap      influence of each point, from 0 (white) to 1 (black)
+     * @param boardX       x of the top left intersection on screen
+     * @param boardY       y of the top left intersection on screen
+     * @param squareLength distance between intersections on screen
+     * @param useGradient  whether to blend the intersections smoothly, or draw a square for each
+     * @param alpha        the alpha of a point with all the influence, 0 to 255
+     * @param blackColor   RGB color of black's influence
+     * @param whiteColor   RGB color of white's influence
+     */
+    void draw(Graphics2D g, double[] heatmap, int boardX, int boardY, int squareLength, boolean useGradient, int alpha,
+              int blackColor, int whiteColor) {
+        if (squareLength != cachedSquareLength || cachedImage == null)
+            resize(squareLength);
+
+        if (heatmap != cachedHeatmap || useGradient != cachedUseGradient || alpha != cachedAlpha ||
+                blackColor != cachedBlackColor || whiteColor != cachedWhiteColor) {
+            cachedHeatmap = heatmap;
+            cachedUseGradient = useGradient;
+            cachedAlpha = alpha;
+            cachedBlackColor = blackColor;
+            cachedWhiteColor = whiteColor;
+
+            fillRaster(heatmap, useGradient, alpha, blackColor, whiteColor);
+
+            Graphics2D cachedGraphics = cachedImage.createGraphics();
+            // replace the old pixels instead of blending over them
+            cachedGraphics.setComposite(AlphaComposite.Src);
+            cachedGraphics.drawImage(raster, 0, 0, null);
+            cachedGraphics.dispose();
+        }
+
+        g.drawImage(cachedImage, boardX - MARGIN * squareLength, boardY - MARGIN * squareLength, null);
+    }
+
+    /**
+     * Draws a heatmap cheaply, one flat square per intersection: the colors are computed into an image with one pixel
+     * per intersection, which is scaled up without smoothing as it is drawn. Used while the heatmap changes too fast
+     * for the full layer to keep up
+     *
+     * @see #draw
+     */
+    void drawPreview(Graphics2D g, double[] heatmap, int boardX, int boardY, int squareLength, int alpha,
+                     int blackColor, int whiteColor) {
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                double value = (heatmap[Board.getIndex(x, y)] - 0.5) * 2;
+                int pixelAlpha = (int) Math.abs(alpha * value);
+                previewPixels[y * SIZE + x] = pixelAlpha << 24 | (value > 0 ? blackColor : whiteColor) & 0xFFFFFF;
+            }
+        }
+
+        Object interpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        int half = squareLength / 2;
+        g.drawImage(preview, boardX - half, boardY - half, SIZE * squareLength, SIZE * squareLength, null);
+        if (interpolation != null)
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+    }
+
+    /**
+     * Makes the images and kernel tables for a new board size
+     */
+    private void resize(int squareLength) {
+        cachedSquareLength = squareLength;
+        cachedHeatmap = null;
+
+        int length = (SIZE - 1 + 2 * MARGIN) * squareLength + 1;
+        raster = new BufferedImage(length, length, BufferedImage.TYPE_INT_ARGB);
+        pixels = ((DataBufferInt) raster.getRaster().getDataBuffer()).getData();
+        cachedImage = StoneSprites.createImage(length, length);
+        smoothedX = new double[SIZE * length];
+        row = new double[length];
+
+        firstTap = new int[length];
+        tapWeights = new double[length * TAPS];
+        closest = new int[length];
+        for (int p = 0; p < length; p++) {
+            double position = (double) p / squareLength - MARGIN;
+
+            int nearest = (int) Math.floor(position + 0.5);
+            closest[p] = nearest >= 0 && nearest < SIZE ? nearest : -1;
+
+            // intersections off the board keep their weight of 0, so the glow fades out past the edge
+            firstTap[p] = (int) Math.ceil(position - SUPPORT);
+            for (int t = 0; t < TAPS; t++) {
+                int i = firstTap[p] + t;
+                double distance = position - i;
+                if (i >= 0 && i < SIZE && Math.abs(distance) <= SUPPORT)
+                    tapWeights[p * TAPS + t] = Math.exp(-distance * distance / (2 * SIGMA * SIGMA)) / (SIGMA * Math.sqrt(2 * Math.PI));
+            }
+        }
+    }
+
+    private void fillRaster(double[] heatmap, boolean useGradient, int alpha, int blackColor, int whiteColor) {
+        for (int i = 0; i < field.length; i++)
+            field[i] = (heatmap[i] - 0.5) * 2;
+
+        int length = raster.getWidth();
+        if (useGradient)
+            smooth(length);
+
+        for (int py = 0; py < length; py++) {
+            if (useGradient)
+                smoothRow(py, length);
+            else
+                squareRow(py, length);
+
+            int offset = py * length;
+            for (int px = 0; px < length; px++) {
+                double value = row[px];
+                int pixelAlpha = (int) Math.abs(alpha * value);
+                pixels[offset + px] = pixelAlpha << 24 | (value > 0 ? blackColor : whiteColor) & 0xFFFFFF;
+            }
+        }
+    }
+
+    /**
+     * The gaussian is separable, so smooth every row of the field along x once. Each row of pixels is then a weighted
+     * sum of a few of these
+     */
+    private void smooth(int length) {
+        for (int y = 0; y < SIZE; y++) {
+            for (int px = 0; px < length; px++) {
+                double sum = 0;
+                for (int t = 0; t < TAPS; t++) {
+                    double weight = tapWeights[px * TAPS + t];
+                    if (weight != 0)
+                        sum += weight * field[Board.getIndex(firstTap[px] + t, y)];
+                }
+                smoothedX[y * length + px] = sum;
+            }
+        }
+    }
+
+    /**
+     * Fills row with the smoothed values of a row of pixels
+     */
+    private void smoothRow(int py, int length) {
+        Arrays.fill(row, 0, length, 0);
+        for (int t = 0; t < TAPS; t++) {
+            double weight = tapWeights[py * TAPS + t];
+            if (weight == 0)
+                continue;
+
+            int offset = (firstTap[py] + t) * length;
+            for (int px = 0; px < length; px++)
+                row[px] += weight * smoothedX[offset + px];
+        }
+        for (int px = 0; px < length; px++)
+            row[px] = Math.max(-1, Math.min(1, row[px]));
+    }
+
+    /**
+     * Fills row with the values of the intersections closest to a row of pixels, 0 off the board
+     */
+    private void squareRow(int py, int length) {
+        int y = closest[py];
+        for (int px = 0; px < length; px++) {
+            int x = closest[px];
+            row[px] = x >= 0 && y >= 0 ? field[Board.getIndex(x, y)] : 0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package featurecat.omega.ui;
+
+import featurecat.omega.rules.Board;
+import featurecat.omega.rules.BoardData;
+import featurecat.omega.rules.BoardHistoryList;
+import featurecat.omega.rules.InfluenceField;
+import featurecat.omega.rules.InfluenceModel;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the heatmaps of the moves around the one being shown on a background thread, so that they are already in
+ * the board's heatmap cache when the user scrolls to them. Whenever the board moves, the work for the old position
+ * is cancelled and the moves around the new one are started, closest first.
+ *
+ * The positions are read from a snapshot of the board's history, so the prefetcher never takes the board's lock or
+ * plays a loaded game. Stone layers are not prefetched: the renderer redraws only the points that changed, which
+ * costs a few sprites for a step or a ctrl-scroll jump, while a prefetched layer would take two board-sized images
+ * per move.
+ */
+public class HeatmapPrefetcher {
+    // how many moves before and after the current one to compute. Covers a ctrl-scroll jump
+    public static int distance = 12;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Heatmap prefetcher");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // running sums of the prefetcher thread. Moving from one neighbouring move to the next keeps updates small
+    private final InfluenceField field = new InfluenceField();
+
+    private Future<?> pending;
+
+    /**
+     * Starts computing the heatmaps around the current position of board, dropping any older work. Thread safe
+     */
+    public synchronized void prefetch(Board board) {
+        if (pending != null)
+            pending.cancel(true);
+
+        BoardHistoryList.Snapshot history = board.getHistorySnapshot();
+        int current = history.getCurrentIndex();
+        InfluenceModel model = Board.getInfluenceModel();
+        int stoneInfluence = Board.stoneInfluence;
+        boolean useGradient = BoardRenderer.useGradient;
+
+        pending = executor.submit(() -> {
+            for (int offset = 1; offset <= distance; offset++) {
+                for (int sign = 1; sign >= -1; sign -= 2) {
+                    if (Thread.currentThread().isInterrupted())
+                        return;
+
+                    int index = current + sign * offset;
+                    if (index < 0 || index >= history.size())
+                        continue;
+
+                    BoardData data = history.getData(index);
+                    board.getInfluenceHeatmap(data, model, stoneInfluence, useGradient, field);
+                }
+            }
+        });
+    }
+}
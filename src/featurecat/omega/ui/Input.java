@@ -17,13 +17,11 @@ public class Input implements MouseListener, KeyListener, MouseWheelListener, Mo
         command(KeyEvent.VK_RIGHT, this::redo);
         command(KeyEvent.VK_LEFT, this::undo);
         command(KeyEvent.VK_O, OmegaFrame::openSgf);
-//        command(KeyEvent.VK_S, OmegaFrame::openFolder);
-        command(KeyEvent.VK_HOME, () -> {
-            while (Omega.board.previousMove()) ;
-        });
-        command(KeyEvent.VK_END, () -> {
-            while (Omega.board.nextMove()) ;
-        });
+        command(KeyEvent.VK_S, OmegaFrame::openFolder);
+        command(KeyEvent.VK_N, () -> OmegaFrame.showSearchResult(1));
+        command(KeyEvent.VK_P, () -> OmegaFrame.showSearchResult(-1));
+        command(KeyEvent.VK_HOME, () -> Omega.board.seek(0));
+        command(KeyEvent.VK_END, () -> Omega.board.seek(Integer.MAX_VALUE));
         command(KeyEvent.VK_W, () -> Omega.placeMode = PlaceMode.WHITE);
         command(KeyEvent.VK_B, () -> Omega.placeMode = PlaceMode.BLACK);
         command(KeyEvent.VK_A, () -> Omega.placeMode = PlaceMode.ALTERNATING);
@@ -62,7 +60,8 @@ public class Input implements MouseListener, KeyListener, MouseWheelListener, Mo
 
     @Override
     public void mouseReleased(MouseEvent e) {
-
+        if (e.getButton() == MouseEvent.BUTTON1)
+            Omega.frame.onReleased(e.getX(), e.getY());
     }
 
     @Override
@@ -103,8 +102,7 @@ public class Input implements MouseListener, KeyListener, MouseWheelListener, Mo
         if (controlIsPressed)
             movesToAdvance = 10;
 
-        for (int i = 0; i < movesToAdvance; i++)
-            Omega.board.previousMove();
+        Omega.board.seek(Omega.board.getData().moveNumber - movesToAdvance);
     }
 
     private void redo() {
@@ -112,8 +110,7 @@ public class Input implements MouseListener, KeyListener, MouseWheelListener, Mo
         if (controlIsPressed)
             movesToAdvance = 10;
 
-        for (int i = 0; i < movesToAdvance; i++)
-            Omega.board.nextMove();
+        Omega.board.seek(Omega.board.getData().moveNumber + movesToAdvance);
     }
 
     @Override
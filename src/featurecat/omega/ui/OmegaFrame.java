@@ -3,9 +3,13 @@ package featurecat.omega.ui;
 import featurecat.omega.Omega;
 import featurecat.omega.rules.Board;
 import featurecat.omega.analysis.SGFParser;
+import featurecat.omega.rules.BoardData;
+import featurecat.omega.rules.BoardListener;
+import featurecat.omega.rules.InfluenceModel;
 import featurecat.omega.rules.Search;
+import featurecat.omega.rules.SearchData;
+import featurecat.omega.rules.Stone;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import java.awt.*;
@@ -13,22 +17,56 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferStrategy;
 import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
 
 
 /**
  * The window used to display the game.
  */
-public class OmegaFrame extends JFrame {
+public class OmegaFrame extends JFrame implements BoardListener {
+    private static final String TITLE = "Influencie";
+
+    // the most positions of a folder search that are kept to step through. The others are only counted
+    private static final int MAX_SEARCH_RESULTS = 1000;
+
     private static BoardRenderer boardRenderer;
 
     private final BufferStrategy bs;
 
     private final List<Slider> sliders;
 
+    private final RenderLoop renderLoop;
+    private final HeatmapPrefetcher prefetcher = new HeatmapPrefetcher();
+
+    // finishes the heatmap in full quality after a slider drag
+    private final ExecutorService refiner = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Heatmap refiner");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> refinement;
+    private int refinementGeneration;
+    private boolean draggingSlider;
+
+    // the positions found by the last folder search, the one shown, how many were found in all and how far the
+    // search has got. Only used on the event dispatch thread
+    private static final List<SearchData> searchResults = new ArrayList<>();
+    private static int searchResultIndex;
+    private static long searchMatches;
+    private static String searchProgress;
+    // tells the results of the last search from those of an older one still running
+    private static int searchGeneration;
+
 //    static {
 //        // load fonts
 //        try {
@@ -44,7 +82,7 @@ public class OmegaFrame extends JFrame {
      * Creates a window
      */
     public OmegaFrame() {
-        super("Influencie");
+        super(TITLE);
 
         boardRenderer = new BoardRenderer();
 
@@ -88,17 +126,22 @@ public class OmegaFrame extends JFrame {
         sliders.add(new Slider(x, y+6*width, length, "Intensity", 0, 255, BoardRenderer.maxAlpha, new Color(0xB6,0x00,0x89).brighter(), Color.BLACK, val -> BoardRenderer.maxAlpha = (int)val));
         sliders.add(new Slider(x, y+7*width, length, "Stone Influence", 1, 20, Board.stoneInfluence, new Color(0xB6,0x00,0x89).brighter(), Color.BLACK, val -> Board.stoneInfluence = (int)val));
         sliders.add(new Slider(x, y+8*width, length, "Gradients", 0, 1, BoardRenderer.useGradient? 1 : 0, new Color(0xB6,0x00,0x89).brighter(), Color.BLACK, val -> BoardRenderer.useGradient = ((int)val) == 1));
+        sliders.add(new Slider(x, y+9*width, length, "Model", Board.getInfluenceModelNames(), Board.influenceModelIndex, new Color(0xB6,0x00,0x89).brighter(), Color.BLACK, val -> Board.influenceModelIndex = (int)val));
 
         y += width/2;
 
-        sliders.add(new Slider(x, y+9*width, length, "Board", 0, 3, BoardRenderer.boardTypeIndex, Color.PINK, Color.BLACK, val -> BoardRenderer.boardTypeIndex = (int) val));
-        sliders.add(new Slider(x, y+10*width, length, "Intersection Color", 0, 2, BoardRenderer.intersectionColor, Color.WHITE, Color.BLACK, val -> BoardRenderer.intersectionColor = (int)val));
-        sliders.add(new Slider(x, y+11*width, length, "Show Stones", 0, 1, Omega.showStones? 1 : 0, Color.PINK, Color.BLACK, val -> Omega.showStones = (int) val == 1));
-        sliders.add(new Slider(x, y+12*width, length, "Show Heatmap", 0, 1, Omega.showHeatmap? 1 : 0, Color.PINK, Color.BLACK, val -> Omega.showHeatmap = (int) val == 1));
-        sliders.add(new Slider(x, y+13*width, length, "Outline Black", 0, 1, BoardRenderer.blackStoneOutline? 1 : 0, Color.PINK, Color.BLACK, val -> BoardRenderer.blackStoneOutline = (int) val == 1));
+        sliders.add(new Slider(x, y+10*width, length, "Board", 0, 3, BoardRenderer.boardTypeIndex, Color.PINK, Color.BLACK, val -> BoardRenderer.boardTypeIndex = (int) val));
+        sliders.add(new Slider(x, y+11*width, length, "Intersection Color", 0, 2, BoardRenderer.intersectionColor, Color.WHITE, Color.BLACK, val -> BoardRenderer.intersectionColor = (int)val));
+        sliders.add(new Slider(x, y+12*width, length, "Show Stones", 0, 1, Omega.showStones? 1 : 0, Color.PINK, Color.BLACK, val -> Omega.showStones = (int) val == 1));
+        sliders.add(new Slider(x, y+13*width, length, "Show Heatmap", 0, 1, Omega.showHeatmap? 1 : 0, Color.PINK, Color.BLACK, val -> Omega.showHeatmap = (int) val == 1));
+        sliders.add(new Slider(x, y+14*width, length, "Outline Black", 0, 1, BoardRenderer.blackStoneOutline? 1 : 0, Color.PINK, Color.BLACK, val -> BoardRenderer.blackStoneOutline = (int) val == 1));
+
+        // frames are drawn on the render loop's thread from here on
+        renderLoop = new RenderLoop(this);
+        renderLoop.start();
 
         // necessary for Windows users - otherwise Lizzie shows a blank white screen on startup until updates occur.
-        repaint();
+        renderLoop.invalidate();
 
         // when the window is closed: save the SGF file, then run shutdown()
         this.addWindowListener(new WindowAdapter() {
@@ -120,7 +163,6 @@ public class OmegaFrame extends JFrame {
                 file = new File(file.getPath() + ".sgf");
             }
             try {
-                System.out.println(file.getPath());
                 SGFParser.load(file.getPath());
             } catch (IOException err) {
                 JOptionPane.showConfirmDialog(null, "Failed to open the SGF file.", "Error", JOptionPane.ERROR);
@@ -135,40 +177,180 @@ public class OmegaFrame extends JFrame {
         int result = chooser.showOpenDialog(null);
         if (result == JFileChooser.APPROVE_OPTION) {
             File file = chooser.getSelectedFile();
-            System.out.println(file.getPath());
             Search.directory = file.getPath();
+            searchFolder();
+        }
+    }
+
+    /**
+     * Searches the folder for the position on the board, on a background thread. The first position found is shown
+     * as soon as it is found, and the others can be stepped through with showSearchResult. How far the search has got
+     * is shown in the title of the window
+     */
+    private static void searchFolder() {
+        Stone[] position = Omega.board.getStones();
+        Path directory = Paths.get(Search.directory);
+        int generation = ++searchGeneration;
+        searchResults.clear();
+        searchResultIndex = 0;
+        searchMatches = 0;
+        searchProgress = "starting";
+        updateTitle();
+
+        Thread thread = new Thread(() -> {
+            try {
+                Search.getMatchingPositions(position, directory,
+                        searchData -> SwingUtilities.invokeLater(() -> addSearchResult(generation, searchData)),
+                        progress -> SwingUtilities.invokeLater(() -> setSearchProgress(generation, progress.toString())));
+            } catch (IOException err) {
+                SwingUtilities.invokeLater(() -> JOptionPane.showConfirmDialog(null, "Failed to search the folder.",
+                        "Error", JOptionPane.ERROR));
+            }
+        }, "Folder search");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void addSearchResult(int generation, SearchData searchData) {
+        if (generation != searchGeneration)
+            return;
+
+        searchMatches++;
+        if (searchResults.size() < MAX_SEARCH_RESULTS) {
+            searchResults.add(searchData);
+            if (searchResults.size() == 1)
+                Omega.setBoard(searchData.getBoard());
+        }
+        updateTitle();
+    }
+
+    private static void setSearchProgress(int generation, String progress) {
+        if (generation != searchGeneration)
+            return;
+
+        searchProgress = progress;
+        updateTitle();
+    }
+
+    /**
+     * Shows another position found by the last folder search. Call on the event dispatch thread
+     *
+     * @param step how many positions to move by, eg -1 for the previous one
+     */
+    public static void showSearchResult(int step) {
+        if (searchResults.isEmpty())
+            return;
+
+        searchResultIndex = Math.floorMod(searchResultIndex + step, searchResults.size());
+        Omega.setBoard(searchResults.get(searchResultIndex).getBoard());
+        updateTitle();
+    }
+
+    private static void updateTitle() {
+        if (Omega.frame == null || searchProgress == null)
+            return;
+
+        String title = TITLE + " - Folder search: " + searchProgress;
+        if (!searchResults.isEmpty()) {
+            SearchData searchData = searchResults.get(searchResultIndex);
+            title += String.format(" - position %d/%d%s: %s, move %d", searchResultIndex + 1, searchResults.size(),
+                    searchMatches > searchResults.size() ? " of " + searchMatches : "",
+                    searchData.file.getFileName(), searchData.moveNumber);
         }
+        Omega.frame.setTitle(title);
     }
 
-    BufferedImage cachedImage;
+    /**
+     * Boards may change many times in a row, and from any thread. The render loop draws at most one frame per
+     * refresh for them, and the heatmaps of the neighbouring moves are computed in the background
+     */
+    @Override
+    public void boardChanged(Board board) {
+        if (Omega.showHeatmap)
+            prefetcher.prefetch(board);
+
+        renderLoop.invalidate();
+    }
 
     /**
-     * Draws the game board and interface
+     * Repaints asked for by AWT or with repaint() are handed to the render loop
      *
      * @param g0 not used
      */
+    @Override
     public void paint(Graphics g0) {
-        if (bs == null)
-            return;
+        // paint can be called while the constructor is still making the window
+        if (renderLoop != null)
+            renderLoop.invalidate();
+    }
 
-        // initialize
-        cachedImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = (Graphics2D) cachedImage.getGraphics();
-        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+    /**
+     * @return the loop drawing this window, eg to read frame times
+     */
+    public RenderLoop getRenderLoop() {
+        return renderLoop;
+    }
+
+    private static final BufferedImage BACKGROUND = RenderResources.getImage("assets/background.jpg");
+
+    // the frame is drawn here first, then copied to the screen in one go. Only made again when the window is resized
+    // or the image can't be used on the window's screen
+    private VolatileImage backBuffer;
 
+    // the background, already scaled to the window
+    private BufferedImage cachedBackground;
+
+    /**
+     * Draws the game board and interface. Called by the render loop, off the event dispatch thread
+     *
+     * @param isStale tells whether or not a newer state is waiting to be drawn, in which case the frame isn't shown
+     * @return whether or not the frame was shown
+     */
+    boolean renderFrame(BooleanSupplier isStale) {
+        if (bs == null || getWidth() <= 0 || getHeight() <= 0)
+            return false;
+
+        do {
+            GraphicsConfiguration configuration = getGraphicsConfiguration();
+            if (backBuffer == null || backBuffer.getWidth() != getWidth() || backBuffer.getHeight() != getHeight() ||
+                    backBuffer.validate(configuration) == VolatileImage.IMAGE_INCOMPATIBLE)
+                backBuffer = createVolatileImage(getWidth(), getHeight());
+
+            Graphics2D g = backBuffer.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            render(g);
+
+            // cleanup
+            g.dispose();
+
+            if (isStale.getAsBoolean())
+                return false;
+
+            // draw the image
+            do {
+                do {
+                    Graphics2D bsGraphics = (Graphics2D) bs.getDrawGraphics();
+                    bsGraphics.drawImage(backBuffer, 0, 0, null);
+
+                    // cleanup
+                    bsGraphics.dispose();
+                } while (bs.contentsRestored());
+                bs.show();
+            } while (bs.contentsLost());
+        } while (backBuffer.contentsLost());
+        return true;
+    }
+
+    /**
+     * Draws the background, sliders and board
+     */
+    private void render(Graphics2D g) {
         int topInset = this.getInsets().top;
 
-        try {
-            BufferedImage background = ImageIO.read(new File("assets/background.jpg"));
-            int drawWidth = Math.max(background.getWidth(), getWidth());
-            int drawHeight = Math.max(background.getHeight(), getHeight());
-            g.drawImage(background, 0, 0, drawWidth, drawHeight, null);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        g.drawImage(getBackgroundImage(), 0, 0, null);
 
-        for (Slider s : sliders) {
-            s.render(g);
+        for (int i = 0; i < sliders.size(); i++) {
+            sliders.get(i).render(g);
         }
 
         int maxSize = (int) (Math.min(getWidth(), getHeight() - topInset) * 0.98);
@@ -179,18 +361,25 @@ public class OmegaFrame extends JFrame {
         boardRenderer.setLocation(boardX, boardY);
         boardRenderer.setBoardLength(maxSize);
         boardRenderer.draw(g);
+    }
 
-        // cleanup
-        g.dispose();
-
-        // draw the image
-        Graphics2D bsGraphics = (Graphics2D) bs.getDrawGraphics();
-        bsGraphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        bsGraphics.drawImage(cachedImage, 0, 0, null);
-
-        // cleanup
-        bsGraphics.dispose();
-        bs.show();
+    /**
+     * @return the background scaled to cover the window, drawn again only when the window is resized
+     */
+    private BufferedImage getBackgroundImage() {
+        if (cachedBackground == null || cachedBackground.getWidth() != getWidth() ||
+                cachedBackground.getHeight() != getHeight()) {
+            cachedBackground = getGraphicsConfiguration().createCompatibleImage(getWidth(), getHeight(), Transparency.OPAQUE);
+            Graphics2D g = cachedBackground.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (BACKGROUND != null) {
+                int drawWidth = Math.max(BACKGROUND.getWidth(), getWidth());
+                int drawHeight = Math.max(BACKGROUND.getHeight(), getHeight());
+                g.drawImage(BACKGROUND, 0, 0, drawWidth, drawHeight, null);
+            }
+            g.dispose();
+        }
+        return cachedBackground;
     }
 
     /**
@@ -208,6 +397,9 @@ public class OmegaFrame extends JFrame {
         } else {
             for (Slider s : sliders) {
                 if (s.onClicked(x, y)) {
+                    // show a preview right away, the heatmap may take a while with the new value
+                    startPreview();
+                    refine();
                     break;
                 }
             }
@@ -224,12 +416,59 @@ public class OmegaFrame extends JFrame {
             // but in case its not on the board, good for sliders
             for (Slider s : sliders) {
                 if (s.onClicked(x, y)) {
+                    // draw cheap previews until the mouse is released
+                    startPreview();
                     break;
                 }
             }
         }
     }
 
+    public void onReleased(int x, int y) {
+        if (draggingSlider)
+            refine();
+    }
+
+    /**
+     * Drops any refinement in progress, and draws heatmap previews from now on
+     */
+    private synchronized void startPreview() {
+        draggingSlider = true;
+        refinementGeneration++;
+        if (refinement != null)
+            refinement.cancel(true);
+
+        boardRenderer.setPreviewing(true);
+    }
+
+    /**
+     * Computes the full quality heatmap in the background, then switches back to drawing it. Starting another preview
+     * in the meantime cancels this
+     */
+    private synchronized void refine() {
+        draggingSlider = false;
+        int generation = ++refinementGeneration;
+
+        Board board = Omega.board;
+        BoardData data = board.getData();
+        InfluenceModel model = Board.getInfluenceModel();
+        int stoneInfluence = Board.stoneInfluence;
+        boolean useGradient = BoardRenderer.useGradient;
+
+        refinement = refiner.submit(() -> {
+            board.getInfluenceHeatmap(data, model, stoneInfluence, useGradient);
+            finishRefinement(generation);
+        });
+    }
+
+    private synchronized void finishRefinement(int generation) {
+        if (generation != refinementGeneration)
+            return;
+
+        boardRenderer.setPreviewing(false);
+        renderLoop.invalidate();
+    }
+
     public void onMouseMoved(int x, int y) {
         // TODO do we need this method?
     }
@@ -0,0 +1,139 @@
+package featurecat.omega.ui;
+
+import java.awt.*;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Draws the window on its own thread. Anything may invalidate the window any number of times, from any thread; the
+ * loop draws at most one frame per display refresh, showing whatever the state is when the frame starts. Input
+ * handlers on the event dispatch thread never wait for a frame to be drawn.
+ */
+public class RenderLoop {
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    // weight of the newest frame in the average frame time
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    private final OmegaFrame frame;
+    private final Thread thread;
+    private final long frameInterval;
+
+    private final Object lock = new Object();
+    private boolean invalid;
+
+    private volatile long lastFrameNanos;
+    private volatile double averageFrameNanos;
+    private volatile long framesShown, framesSkipped;
+
+    public RenderLoop(OmegaFrame frame) {
+        this.frame = frame;
+        frameInterval = 1_000_000_000L / getRefreshRate();
+
+        thread = new Thread(this::run, "Render loop");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Asks for a frame to be drawn. Thread safe, and returns immediately
+     */
+    public void invalidate() {
+        synchronized (lock) {
+            invalid = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * @return how long drawing the last frame took, in nanoseconds
+     */
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    /**
+     * @return a moving average of how long drawing a frame takes, in nanoseconds
+     */
+    public double getAverageFrameNanos() {
+        return averageFrameNanos;
+    }
+
+    public long getFramesShown() {
+        return framesShown;
+    }
+
+    /**
+     * @return how many frames were drawn but not shown, because the state changed while they were drawn
+     */
+    public long getFramesSkipped() {
+        return framesSkipped;
+    }
+
+    private void run() {
+        long lastFrameStart = 0;
+        boolean skippedLast = false;
+
+        while (true) {
+            try {
+                synchronized (lock) {
+                    while (!invalid)
+                        lock.wait();
+                }
+
+                // wait out the rest of the refresh interval. Invalidations in the meantime end up in this same frame
+                long wait = lastFrameStart + frameInterval - System.nanoTime();
+                if (wait > 0)
+                    Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+
+                synchronized (lock) {
+                    invalid = false;
+                }
+
+                lastFrameStart = System.nanoTime();
+
+                // a frame is stale if the state changed while it was drawn. Draw the new state right away instead,
+                // but never skip two frames in a row, so that constant changes still show up
+                boolean maySkip = !skippedLast;
+                BooleanSupplier isStale = () -> maySkip && isInvalid();
+                boolean shown = frame.renderFrame(isStale);
+
+                long elapsed = System.nanoTime() - lastFrameStart;
+                lastFrameNanos = elapsed;
+                averageFrameNanos = averageFrameNanos == 0 ? elapsed :
+                        AVERAGE_WEIGHT * elapsed + (1 - AVERAGE_WEIGHT) * averageFrameNanos;
+
+                if (shown) {
+                    framesShown++;
+                    skippedLast = false;
+                } else {
+                    framesSkipped++;
+                    skippedLast = true;
+                    lastFrameStart = 0;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // keep drawing later frames
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private boolean isInvalid() {
+        synchronized (lock) {
+            return invalid;
+        }
+    }
+
+    private static int getRefreshRate() {
+        if (GraphicsEnvironment.isHeadless())
+            return DEFAULT_REFRESH_RATE;
+
+        int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDisplayMode()
+                .getRefreshRate();
+        return refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_REFRESH_RATE : refreshRate;
+    }
+}
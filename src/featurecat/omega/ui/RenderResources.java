@@ -0,0 +1,83 @@
+package featurecat.omega.ui;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.font.TextAttribute;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Colors, strokes, fonts and images used to draw the window. Each is made once and then shared by every frame, so
+ * that drawing a frame doesn't allocate any of them. Thread safe.
+ */
+class RenderResources {
+    static final Color SLIDER_BACKGROUND = new Color(0, 0, 0, 140);
+    static final Color PASS_BLACK = new Color(0, 0, 0, 150);
+    static final Color PASS_WHITE = new Color(255, 255, 255, 150);
+
+    // strokes by width
+    private static BasicStroke[] strokes = new BasicStroke[4];
+
+    // fonts with kerning enabled, by name, then by style and size
+    private static final Map<String, Font[][]> fonts = new HashMap<>();
+
+    // decoded images by path. Images that couldn't be read are kept as null
+    private static final Map<String, BufferedImage> images = new HashMap<>();
+
+    /**
+     * @return a solid stroke of the given width
+     */
+    static synchronized BasicStroke getStroke(int width) {
+        if (width >= strokes.length)
+            strokes = Arrays.copyOf(strokes, Math.max(width + 1, 2 * strokes.length));
+        if (strokes[width] == null)
+            strokes[width] = new BasicStroke(width);
+        return strokes[width];
+    }
+
+    /**
+     * @param style a combination of Font.PLAIN, Font.BOLD and Font.ITALIC
+     * @return a font with kerning enabled
+     */
+    static synchronized Font getFont(String name, int style, int size) {
+        Font[][] styles = fonts.computeIfAbsent(name, n -> new Font[4][]);
+        Font[] sizes = styles[style];
+        if (sizes == null || size >= sizes.length) {
+            int length = sizes == null ? size + 1 : Math.max(size + 1, 2 * sizes.length);
+            sizes = sizes == null ? new Font[length] : Arrays.copyOf(sizes, length);
+            styles[style] = sizes;
+        }
+        if (sizes[size] == null)
+            sizes[size] = makeFont(name, style, size);
+        return sizes[size];
+    }
+
+    /**
+     * @return the image read from a file, or null if it can't be read. Must not be modified
+     */
+    static synchronized BufferedImage getImage(String path) {
+        if (!images.containsKey(path))
+            images.put(path, readImage(path));
+        return images.get(path);
+    }
+
+    private static Font makeFont(String name, int style, int size) {
+        Font font = new Font(name, style, size);
+        Map<TextAttribute, Object> atts = new HashMap<>();
+        atts.put(TextAttribute.KERNING, TextAttribute.KERNING_ON);
+        return font.deriveFont(atts);
+    }
+
+    private static BufferedImage readImage(String path) {
+        try {
+            return ImageIO.read(new File(path));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
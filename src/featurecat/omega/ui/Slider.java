@@ -16,6 +16,9 @@ public class Slider {
 
     private int currentValue;
 
+    // shown after the label for each value, or null to show the label alone
+    private String[] valueNames;
+
     private Consumer set;
 
     public Slider(int x, int y, int length, String label, int min, int max, int defaultValue, Color color, Color text, Consumer set) {
@@ -35,6 +38,14 @@ public class Slider {
         this.set = set;
     }
 
+    /**
+     * @param valueNames the name of each value from min to max, shown after the label
+     */
+    public Slider(int x, int y, int length, String label, String[] valueNames, int defaultValue, Color color, Color text, Consumer<Integer> set) {
+        this(x, y, length, label, 0, valueNames.length - 1, defaultValue, color, text, set);
+        this.valueNames = valueNames;
+    }
+
     public boolean onClicked(int xx, int yy) {
         int x = this.x + insets.left;
         int y = this.y + insets.top;
@@ -58,7 +69,7 @@ public class Slider {
         int x = this.x + insets.left;
         int y = this.y + insets.top;
         g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        g.setColor(new Color(0, 0, 0, 140));
+        g.setColor(RenderResources.SLIDER_BACKGROUND);
         g.fillRect(x - margin, y, length + 2 * margin, fontSize + margin);
 
         g.setColor(color);
@@ -77,14 +88,14 @@ public class Slider {
         }
 
         g.setColor(text);
-        g.setFont(new Font("Calibri", Font.BOLD, fontSize));
+        g.setFont(RenderResources.getFont("Calibri", Font.BOLD, fontSize));
 
-        g.drawString(label, x, y + fontSize);
+        g.drawString(valueNames == null ? label : label + ": " + valueNames[currentValue - min], x, y + fontSize);
 
         g.setColor(Color.BLACK);
-        g.setStroke(new BasicStroke(strokeWidth));
+        g.setStroke(RenderResources.getStroke(strokeWidth));
         g.drawRect(x - margin, y, length + 2 * margin, fontSize + margin);
 
-        g.setStroke(new BasicStroke(1));
+        g.setStroke(RenderResources.getStroke(1));
     }
 }
@@ -0,0 +1,192 @@
+package featurecat.omega.ui;
+
+import featurecat.omega.rules.Stone;
+
+import java.awt.*;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Stones and their shadows, drawn once at one stone radius. The stone assets are decoded once, then scaled down to
+ * the radius in halving steps, which keeps them smooth. Drawing a stone afterwards is a single unscaled drawImage.
+ */
+class StoneSprites {
+    private static final BufferedImage BLACK_SOURCE = RenderResources.getImage("assets/black0.png");
+    private static final BufferedImage WHITE_SOURCE = RenderResources.getImage("assets/white0.png");
+
+    // the shadows are drawn stoneRadius * SHADOW_SIZE / 100 wide
+    private static final int SHADOW_SIZE = 100;
+
+    // room around a stone for its antialiased outline
+    private static final int PADDING = 2;
+
+    private final int stoneRadius;
+    private final boolean blackStoneOutline;
+
+    private final BufferedImage black, white, blackGhost, whiteGhost;
+    private final BufferedImage shadow, ghostShadow;
+    private final int shadowCenter;
+
+    /**
+     * @param stoneRadius       the radius to draw stones at
+     * @param blackStoneOutline whether or not black stones get a white outline
+     */
+    StoneSprites(int stoneRadius, boolean blackStoneOutline) {
+        this.stoneRadius = stoneRadius;
+        this.blackStoneOutline = blackStoneOutline;
+
+        blackGhost = createStone(BLACK_SOURCE, null);
+        whiteGhost = createStone(WHITE_SOURCE, null);
+        black = blackStoneOutline ? createStone(BLACK_SOURCE, Color.WHITE) : blackGhost;
+        white = createStone(WHITE_SOURCE, Color.BLACK);
+
+        int shadowSize = (int) (stoneRadius * 0.3 * SHADOW_SIZE / 100);
+        int fartherShadowSize = (int) (stoneRadius * 0.17 * SHADOW_SIZE / 100);
+        shadowCenter = stoneRadius + 2 * shadowSize + fartherShadowSize + PADDING;
+        shadow = createShadow(false, shadowSize, fartherShadowSize);
+        ghostShadow = createShadow(true, shadowSize, fartherShadowSize);
+    }
+
+    /**
+     * @return whether or not these sprites were made for the given parameters
+     */
+    boolean matches(int stoneRadius, boolean blackStoneOutline) {
+        return this.stoneRadius == stoneRadius && this.blackStoneOutline == blackStoneOutline;
+    }
+
+    /**
+     * Draws a stone centered at (centerX, centerY). Draws nothing for empty points
+     */
+    void drawStone(Graphics2D g, int centerX, int centerY, Stone color) {
+        BufferedImage sprite = getStone(color);
+        if (sprite != null)
+            g.drawImage(sprite, centerX - stoneRadius - PADDING, centerY - stoneRadius - PADDING, null);
+    }
+
+    /**
+     * Draws the shadow of a stone centered at (centerX, centerY). Draws nothing for empty points
+     */
+    void drawShadow(Graphics2D g, int centerX, int centerY, Stone color) {
+        BufferedImage sprite = getShadow(color);
+        if (sprite != null)
+            g.drawImage(sprite, centerX - shadowCenter, centerY - shadowCenter, null);
+    }
+
+    /**
+     * @return how far from the center of a stone its shadow reaches
+     */
+    int getShadowRadius() {
+        return shadowCenter;
+    }
+
+    private BufferedImage getStone(Stone color) {
+        switch (color) {
+            case BLACK:
+                return black;
+            case WHITE:
+                return white;
+            case BLACK_GHOST:
+                return blackGhost;
+            case WHITE_GHOST:
+                return whiteGhost;
+            default:
+                return null;
+        }
+    }
+
+    private BufferedImage getShadow(Stone color) {
+        switch (color) {
+            case BLACK:
+            case WHITE:
+                return shadow;
+            case BLACK_GHOST:
+            case WHITE_GHOST:
+                return ghostShadow;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param outline the color of the outline, or null for none
+     */
+    private BufferedImage createStone(BufferedImage source, Color outline) {
+        int diameter = stoneRadius * 2 + 1;
+        BufferedImage sprite = createImage(diameter + 2 * PADDING, diameter + 2 * PADDING);
+        Graphics2D g = sprite.createGraphics();
+        setQualityHints(g);
+
+        if (source != null)
+            g.drawImage(scaleDown(source, diameter), PADDING, PADDING, diameter, diameter, null);
+        if (outline != null) {
+            g.setColor(outline);
+            g.drawOval(PADDING, PADDING, 2 * stoneRadius, 2 * stoneRadius);
+        }
+
+        g.dispose();
+        return sprite;
+    }
+
+    private BufferedImage createShadow(boolean isGhost, int shadowSize, int fartherShadowSize) {
+        int center = shadowCenter;
+        BufferedImage sprite = createImage(2 * center + 1, 2 * center + 1);
+        Graphics2D g = sprite.createGraphics();
+        setQualityHints(g);
+
+        if (isGhost) {
+            float edge = (float) stoneRadius / (stoneRadius + shadowSize);
+            g.setPaint(new RadialGradientPaint(new Point2D.Float(center, center), stoneRadius + shadowSize,
+                    new float[]{edge - 0.0001f, edge, 1.0f},
+                    new Color[]{new Color(0, 0, 0, 0), new Color(50, 50, 50, 120), new Color(0, 0, 0, 0)}));
+            fillCircle(g, center, center, stoneRadius + shadowSize);
+        } else {
+            g.setPaint(new RadialGradientPaint(new Point2D.Float(center, center), stoneRadius + shadowSize,
+                    new float[]{0.3f, 1.0f}, new Color[]{new Color(50, 50, 50, 150), new Color(0, 0, 0, 0)}));
+            fillCircle(g, center, center, stoneRadius + shadowSize);
+
+            int lowerRight = center + shadowSize;
+            g.setPaint(new RadialGradientPaint(new Point2D.Float(lowerRight, lowerRight), stoneRadius + fartherShadowSize,
+                    new float[]{0.6f, 1.0f}, new Color[]{new Color(0, 0, 0, 140), new Color(0, 0, 0, 0)}));
+            fillCircle(g, lowerRight, lowerRight, stoneRadius + fartherShadowSize);
+        }
+
+        g.dispose();
+        return sprite;
+    }
+
+    /**
+     * Halves an image until the next halving would make it smaller than length. Scaling straight down by a large
+     * factor with bilinear interpolation skips most source pixels and looks jagged
+     */
+    private static BufferedImage scaleDown(BufferedImage image, int length) {
+        while (image.getWidth() / 2 >= length && image.getHeight() / 2 >= length) {
+            BufferedImage half = new BufferedImage(image.getWidth() / 2, image.getHeight() / 2, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = half.createGraphics();
+            setQualityHints(g);
+            g.drawImage(image, 0, 0, half.getWidth(), half.getHeight(), null);
+            g.dispose();
+            image = half;
+        }
+        return image;
+    }
+
+    /**
+     * @return a translucent image in the screen's format if there is a screen, so that drawing it needs no conversion
+     */
+    static BufferedImage createImage(int width, int height) {
+        if (GraphicsEnvironment.isHeadless())
+            return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration()
+                .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+    }
+
+    private static void setQualityHints(Graphics2D g) {
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    }
+
+    private static void fillCircle(Graphics2D g, int centerX, int centerY, int radius) {
+        g.fillOval(centerX - radius, centerY - radius, 2 * radius + 1, 2 * radius + 1);
+    }
+}